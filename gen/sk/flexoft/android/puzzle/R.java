@@ -36,8 +36,13 @@ or to a theme attribute in the form "<code>?[<i>package</i>:][<i>type</i>:]<i>na
         public static final int menu_level=0x7f090006;
         public static final int menu_level_easy=0x7f090007;
         public static final int menu_level_hard=0x7f090009;
+        public static final int menu_level_marathon_16=0x7f09000d;
+        public static final int menu_level_marathon_32=0x7f09000e;
+        public static final int menu_level_marathon_8=0x7f09000c;
         public static final int menu_level_medium=0x7f090008;
         public static final int menu_new_game=0x7f090005;
+        public static final int menu_redo=0x7f090010;
+        public static final int menu_undo=0x7f09000f;
     }
     public static final class layout {
         public static final int about=0x7f030000;
@@ -59,8 +64,14 @@ or to a theme attribute in the form "<code>?[<i>package</i>:][<i>type</i>:]<i>na
         public static final int menu_level=0x7f060004;
         public static final int menu_level_easy=0x7f060005;
         public static final int menu_level_hard=0x7f060007;
+        public static final int menu_level_marathon_16=0x7f060010;
+        public static final int menu_level_marathon_32=0x7f060011;
+        public static final int menu_level_marathon_8=0x7f06000f;
         public static final int menu_level_medium=0x7f060006;
         public static final int menu_new_game=0x7f060003;
+        public static final int menu_redo=0x7f060013;
+        public static final int menu_undo=0x7f060012;
+        public static final int preparing_image=0x7f060014;
         public static final int select_image=0x7f06000c;
     }
     public static final class style {
@@ -0,0 +1,262 @@
+package sk.flexoft.android.puzzle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+import android.util.Log;
+
+/**
+ * @author Vladimir Iszer
+ * Keeps the game in a small binary file so that it survives the death of the process.
+ * A snapshot of the level, the image and the board with its move journal is taken into
+ * memory on the UI thread, which takes microseconds, and written to the file by a background
+ * thread. The file is replaced by renaming a fully written temporary file, so a process killed
+ * while writing leaves the previous snapshot intact. Snapshots queued while another one is
+ * being written are coalesced, only the latest one is written.
+ */
+public class GameStateStore {
+
+	/** The Constant TAG. */
+	private static final String TAG = "GameStateStore";
+
+	/** The magic number starting a snapshot, "PZS1". */
+	private static final int MAGIC = 0x505A5331;
+
+	/** The version of the snapshot format. */
+	private static final int VERSION = 1;
+
+	/** The snapshot file. */
+	private final File file;
+
+	/** The temporary file written before replacing the snapshot file. */
+	private final File tempFile;
+
+	/** The thread writing snapshots. */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	/** The latest snapshot waiting to be written or null. */
+	private final AtomicReference<byte[]> pending = new AtomicReference<byte[]>();
+
+	/**
+	 * A game read from a snapshot.
+	 */
+	public static final class SavedGame
+	{
+		/** The level index. */
+		private final int level;
+
+		/** The image URI or null for the default image. */
+		private final String imageUri;
+
+		/** The input positioned at the board state. */
+		private final DataInputStream boardState;
+
+		/**
+		 * Instantiates a new saved game.
+		 *
+		 * @param level The level index.
+		 * @param imageUri The image URI or null for the default image.
+		 * @param boardState The input positioned at the board state.
+		 */
+		SavedGame(int level, String imageUri, DataInputStream boardState)
+		{
+			this.level = level;
+			this.imageUri = imageUri;
+			this.boardState = boardState;
+		}
+
+		/**
+		 * @return The level index.
+		 */
+		public int getLevel()
+		{
+			return level;
+		}
+
+		/**
+		 * @return The image URI or null for the default image.
+		 */
+		public String getImageUri()
+		{
+			return imageUri;
+		}
+
+		/**
+		 * Restores the board of the game.
+		 *
+		 * @param board The board of the saved size.
+		 * @throws IOException Signals the board state is corrupted.
+		 */
+		public void restoreBoard(PuzzleBoard board) throws IOException
+		{
+			board.readState(boardState);
+		}
+	}
+
+	/**
+	 * Instantiates a new store.
+	 *
+	 * @param file The snapshot file.
+	 */
+	public GameStateStore(File file)
+	{
+		if (file == null)
+		{
+			throw new IllegalArgumentException("file");
+		}
+
+		this.file = file;
+		tempFile = new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Takes a snapshot of a game.
+	 *
+	 * @param level The level index.
+	 * @param imageUri The image URI or null for the default image.
+	 * @param board The board of the game.
+	 * @return The snapshot.
+	 */
+	public static byte[] capture(int level, String imageUri, PuzzleBoard board)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(level);
+			out.writeUTF(imageUri == null ? "" : imageUri);
+			board.writeState(out);
+		}
+		catch (IOException e)
+		{
+			// the stream is kept in memory
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the level and image of a snapshot.
+	 *
+	 * @param snapshot The snapshot.
+	 * @return The game ready to restore its board.
+	 * @throws IOException Signals the snapshot is corrupted or of an unsupported version.
+	 */
+	public static SavedGame parse(byte[] snapshot) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION)
+		{
+			throw new IOException("Unsupported game snapshot.");
+		}
+
+		int level = in.readInt();
+		String imageUri = in.readUTF();
+		return new SavedGame(level, imageUri.length() == 0 ? null : imageUri, in);
+	}
+
+	/**
+	 * Writes a snapshot to the file in the background.
+	 *
+	 * @param snapshot The snapshot.
+	 */
+	public void save(byte[] snapshot)
+	{
+		if (pending.getAndSet(snapshot) == null)
+		{
+			executor.execute(new Runnable() {
+
+				/* (non-Javadoc)
+				 * @see java.lang.Runnable#run()
+				 */
+				@Override
+				public void run() {
+					byte[] latest = pending.getAndSet(null);
+					if (latest != null)
+					{
+						write(latest);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reads the snapshot file.
+	 *
+	 * @return The snapshot or null if there is none.
+	 */
+	public byte[] load()
+	{
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		try
+		{
+			byte[] snapshot = new byte[(int)file.length()];
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try
+			{
+				in.readFully(snapshot);
+			}
+			finally
+			{
+				in.close();
+			}
+
+			return snapshot;
+		}
+		catch (IOException e)
+		{
+			Log.w(TAG, "The game snapshot can't be read.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a snapshot to the temporary file and replaces the snapshot file by it.
+	 *
+	 * @param snapshot The snapshot.
+	 */
+	private void write(byte[] snapshot)
+	{
+		try
+		{
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try
+			{
+				out.write(snapshot);
+				out.getFD().sync();
+			}
+			finally
+			{
+				out.close();
+			}
+
+			if (!tempFile.renameTo(file))
+			{
+				throw new IOException("The snapshot file can't be replaced.");
+			}
+		}
+		catch (IOException e)
+		{
+			Log.w(TAG, "The game snapshot can't be written.", e);
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package sk.flexoft.android.puzzle;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sk.flexoft.android.puzzle.util.TileSource;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * @author Vladimir Iszer
+ * Loads images and slices them into screen layouts on a background thread, so that neither
+ * blocks the UI thread; the results are delivered on the UI thread. A new request cancels
+ * the pending one of the same kind: a new image cancels the loading and slicing of the
+ * previous one, a new layout cancels the slicing of the previous layout. The thread is
+ * interrupted then and {@link ScreenInfo} stops slicing at the next part, results finished
+ * in the meantime are recycled instead of being delivered.
+ * <p>
+ * Layouts likely to be needed later are prewarmed: they are sliced one by one at a background
+ * thread priority whenever no image or layout is waited for. A prewarm in progress is
+ * interrupted by a requested layout and queued again to be resumed afterwards. All the work
+ * runs on a single thread, so an image queued for recycling is never recycled while it is
+ * being sliced.
+ * <p>
+ * The pipeline is meant to be used by the UI thread only.
+ */
+public class ImagePipeline {
+
+	/** The Constant TAG. */
+	private static final String TAG = "ImagePipeline";
+
+	/**
+	 * Receives a loaded image.
+	 */
+	public interface ImageCallback
+	{
+		/**
+		 * Called on the UI thread when the image has been loaded.
+		 *
+		 * @param source The tiles of the image or null if it couldn't be loaded.
+		 */
+		void onImageLoaded(TileSource source);
+	}
+
+	/**
+	 * Receives a sliced layout.
+	 */
+	public interface SliceCallback
+	{
+		/**
+		 * Called on the UI thread when the layout has been sliced.
+		 *
+		 * @param source The sliced image.
+		 * @param info The sliced layout.
+		 */
+		void onSliced(TileSource source, ScreenInfo info);
+	}
+
+	/**
+	 * A layout to be sliced.
+	 */
+	private static final class SliceRequest
+	{
+		/** The image. */
+		final TileSource source;
+
+		/** The screen width. */
+		final int width;
+
+		/** The screen height. */
+		final int height;
+
+		/** Amount of parts along one side. */
+		final int parts;
+
+		/** The callback receiving the layout. */
+		final SliceCallback callback;
+
+		/**
+		 * Instantiates a new request.
+		 *
+		 * @param source The image.
+		 * @param width The screen width.
+		 * @param height The screen height.
+		 * @param parts Amount of parts along one side.
+		 * @param callback The callback receiving the layout.
+		 */
+		SliceRequest(TileSource source, int width, int height, int parts, SliceCallback callback)
+		{
+			if (source == null)
+			{
+				throw new IllegalArgumentException("source");
+			}
+
+			if (callback == null)
+			{
+				throw new IllegalArgumentException("callback");
+			}
+
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.parts = parts;
+			this.callback = callback;
+		}
+	}
+
+	/** The background thread. */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	/** The handler of the UI thread. */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** The layouts waiting to be prewarmed. */
+	private final LinkedList<SliceRequest> prewarmQueue = new LinkedList<SliceRequest>();
+
+	/** The pending image load or null. */
+	private Future<?> loadTask;
+
+	/** The pending slicing or null. */
+	private Future<?> sliceTask;
+
+	/** The prewarm in progress or null. */
+	private Future<?> prewarmTask;
+
+	/** The layout being prewarmed or null. */
+	private SliceRequest prewarmRequest;
+
+	/** The number of the latest image request, older results are dropped. */
+	private int loadGeneration;
+
+	/** The number of the latest slicing request, older results are dropped. */
+	private int sliceGeneration;
+
+	/** The number of the latest prewarm, older results are dropped. */
+	private int prewarmGeneration;
+
+	/** Indicates the pipeline has been shut down. */
+	private boolean isShutDown;
+
+	/**
+	 * Loads an image in the background. Any pending load, slicing and prewarming are cancelled.
+	 *
+	 * @param loader The loader of the image, called on the background thread.
+	 * @param callback The callback receiving the image.
+	 */
+	public void load(final Callable<TileSource> loader, final ImageCallback callback)
+	{
+		if (loader == null)
+		{
+			throw new IllegalArgumentException("loader");
+		}
+
+		if (callback == null)
+		{
+			throw new IllegalArgumentException("callback");
+		}
+
+		cancel();
+		if (isShutDown)
+		{
+			return;
+		}
+
+		final int generation = ++loadGeneration;
+		loadTask = executor.submit(new Runnable() {
+
+			/* (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				TileSource source = null;
+				try
+				{
+					source = loader.call();
+				}
+				catch (Exception e)
+				{
+					Log.w(TAG, "The image can't be loaded.", e);
+				}
+
+				final TileSource loaded = source;
+				handler.post(new Runnable() {
+
+					/* (non-Javadoc)
+					 * @see java.lang.Runnable#run()
+					 */
+					@Override
+					public void run() {
+						if (generation != loadGeneration || isShutDown)
+						{
+							if (loaded != null)
+							{
+								loaded.recycle();
+							}
+
+							return;
+						}
+
+						loadTask = null;
+						callback.onImageLoaded(loaded);
+						schedulePrewarm();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Slices an image into a screen layout in the background. Any pending slicing is cancelled
+	 * and a prewarm in progress is suspended.
+	 *
+	 * @param source The image.
+	 * @param width The screen width.
+	 * @param height The screen height.
+	 * @param parts Amount of parts along one side.
+	 * @param callback The callback receiving the layout.
+	 */
+	public void slice(TileSource source, int width, int height, int parts, SliceCallback callback)
+	{
+		SliceRequest request = new SliceRequest(source, width, height, parts, callback);
+		cancelSlicing();
+		suspendPrewarm();
+		if (isShutDown)
+		{
+			return;
+		}
+
+		final int generation = ++sliceGeneration;
+		sliceTask = executor.submit(new SliceTask(request) {
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.ImagePipeline.SliceTask#deliver(sk.flexoft.android.puzzle.ScreenInfo)
+			 */
+			@Override
+			protected boolean deliver(ScreenInfo info) {
+				if (generation != sliceGeneration)
+				{
+					return false;
+				}
+
+				sliceTask = null;
+				if (info != null)
+				{
+					this.request.callback.onSliced(this.request.source, info);
+				}
+
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Queues a layout to be sliced in advance, once no image or layout is waited for.
+	 *
+	 * @param source The image.
+	 * @param width The screen width.
+	 * @param height The screen height.
+	 * @param parts Amount of parts along one side.
+	 * @param callback The callback receiving the layout.
+	 */
+	public void prewarm(TileSource source, int width, int height, int parts, SliceCallback callback)
+	{
+		prewarmQueue.add(new SliceRequest(source, width, height, parts, callback));
+		schedulePrewarm();
+	}
+
+	/**
+	 * Recycles an image once the slicing in progress is over, as it may still be slicing the image.
+	 *
+	 * @param source The image.
+	 */
+	public void recycle(final TileSource source)
+	{
+		if (source == null)
+		{
+			throw new IllegalArgumentException("source");
+		}
+
+		if (isShutDown)
+		{
+			return;
+		}
+
+		executor.execute(new Runnable() {
+
+			/* (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				source.recycle();
+			}
+		});
+	}
+
+	/**
+	 * Cancels the pending slicing.
+	 */
+	public void cancelSlicing()
+	{
+		sliceGeneration++;
+		if (sliceTask != null)
+		{
+			sliceTask.cancel(true);
+			sliceTask = null;
+			schedulePrewarm();
+		}
+	}
+
+	/**
+	 * Cancels the prewarm in progress and drops the queued ones.
+	 */
+	public void cancelPrewarm()
+	{
+		prewarmQueue.clear();
+		prewarmGeneration++;
+		if (prewarmTask != null)
+		{
+			prewarmTask.cancel(true);
+			prewarmTask = null;
+			prewarmRequest = null;
+		}
+	}
+
+	/**
+	 * Cancels the pending load, slicing and prewarming.
+	 */
+	public void cancel()
+	{
+		cancelPrewarm();
+		cancelSlicing();
+		loadGeneration++;
+		if (loadTask != null)
+		{
+			loadTask.cancel(true);
+			loadTask = null;
+		}
+	}
+
+	/**
+	 * Cancels the pending work and stops the background thread once the images queued for
+	 * recycling are recycled. No more results are delivered.
+	 */
+	public void shutdown()
+	{
+		cancel();
+		isShutDown = true;
+		executor.shutdown();
+	}
+
+	/**
+	 * Interrupts the prewarm in progress and queues it again to be resumed later.
+	 */
+	private void suspendPrewarm()
+	{
+		prewarmGeneration++;
+		if (prewarmTask != null)
+		{
+			prewarmTask.cancel(true);
+			prewarmTask = null;
+			prewarmQueue.addFirst(prewarmRequest);
+			prewarmRequest = null;
+		}
+	}
+
+	/**
+	 * Starts the next prewarm unless the thread is needed for anything else.
+	 */
+	private void schedulePrewarm()
+	{
+		if (isShutDown || prewarmTask != null || loadTask != null || sliceTask != null || prewarmQueue.isEmpty())
+		{
+			return;
+		}
+
+		prewarmRequest = prewarmQueue.removeFirst();
+		final int generation = ++prewarmGeneration;
+		prewarmTask = executor.submit(new SliceTask(prewarmRequest) {
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.ImagePipeline.SliceTask#slice()
+			 */
+			@Override
+			protected ScreenInfo slice() {
+				// prewarming must not take the CPU from the render and UI threads
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				try
+				{
+					return super.slice();
+				}
+				finally
+				{
+					Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+				}
+			}
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.ImagePipeline.SliceTask#deliver(sk.flexoft.android.puzzle.ScreenInfo)
+			 */
+			@Override
+			protected boolean deliver(ScreenInfo info) {
+				if (generation != prewarmGeneration)
+				{
+					return false;
+				}
+
+				prewarmTask = null;
+				prewarmRequest = null;
+				if (info != null)
+				{
+					this.request.callback.onSliced(this.request.source, info);
+				}
+
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Slices a layout on the background thread and passes the result to the UI thread.
+	 */
+	private abstract class SliceTask implements Runnable
+	{
+		/** The layout to be sliced. */
+		protected final SliceRequest request;
+
+		/**
+		 * Instantiates a new task.
+		 *
+		 * @param request The layout to be sliced.
+		 */
+		SliceTask(SliceRequest request)
+		{
+			this.request = request;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			final ScreenInfo info = slice();
+			handler.post(new Runnable() {
+
+				/* (non-Javadoc)
+				 * @see java.lang.Runnable#run()
+				 */
+				@Override
+				public void run() {
+					if (isShutDown || !deliver(info))
+					{
+						if (info != null)
+						{
+							info.recycle();
+						}
+
+						return;
+					}
+
+					schedulePrewarm();
+				}
+			});
+		}
+
+		/**
+		 * Slices the layout, called on the background thread.
+		 *
+		 * @return The layout or null if the slicing has been cancelled or has failed.
+		 */
+		protected ScreenInfo slice()
+		{
+			try
+			{
+				return new ScreenInfo(request.source, request.width, request.height, request.parts);
+			}
+			catch (CancellationException e)
+			{
+				return null;
+			}
+			catch (RuntimeException e)
+			{
+				Log.w(TAG, "The image can't be sliced.", e);
+				return null;
+			}
+			catch (OutOfMemoryError e)
+			{
+				Log.w(TAG, "The image is too large to be sliced.", e);
+				return null;
+			}
+		}
+
+		/**
+		 * Delivers the result on the UI thread.
+		 *
+		 * @param info The layout or null if the slicing has been cancelled or has failed.
+		 * @return true if the result is current; false if it has been superseded
+		 */
+		protected abstract boolean deliver(ScreenInfo info);
+	}
+}
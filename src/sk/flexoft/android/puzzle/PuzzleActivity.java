@@ -1,18 +1,30 @@
 package sk.flexoft.android.puzzle;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
+import sk.flexoft.android.puzzle.core.Difficulty;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+import sk.flexoft.android.puzzle.core.PuzzleBoardListener;
+import sk.flexoft.android.puzzle.generator.PuzzleGenerator;
+import sk.flexoft.android.puzzle.recording.GameRecorder;
 import sk.flexoft.android.puzzle.util.AndroidExtensions;
 import sk.flexoft.android.puzzle.util.AndroidExtensions.LogType;
+import sk.flexoft.android.puzzle.util.BitmapLoader;
+import sk.flexoft.android.puzzle.util.TileSource;
 
 import android.app.Activity;
 import android.app.Dialog;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
@@ -28,7 +40,7 @@ import android.widget.Button;
  * The main application activity
  *
  */
-public class PuzzleActivity extends Activity {
+public class PuzzleActivity extends Activity implements PuzzleBoardListener {
 
 	/** The Constant TAG. */
 	private static final String TAG = "PuzzleActivity";
@@ -36,16 +48,42 @@ public class PuzzleActivity extends Activity {
 	/** Constant for intent request to choose a picture. */
 	private static final int INTENT_REQ_PIC_PICK = 666;
 	
-	/** Bitmap decoding options */
-	private static final BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+	/** The name of the file the played games are appended to. */
+	private static final String RECORDING_FILE = "games.rec";
+	
+	/** The name of the file keeping the current game. */
+	private static final String STATE_FILE = "game.state";
+	
+	/** The key of the game snapshot in the saved instance state. */
+	private static final String STATE_KEY = "game";
+	
+	/** The levels in the order of their persisted indexes. */
+	static final int[] LEVELS = { R.id.menu_level_easy, R.id.menu_level_medium, R.id.menu_level_hard,
+		R.id.menu_level_marathon_8, R.id.menu_level_marathon_16, R.id.menu_level_marathon_32 };
+	
+	/** The boards for individual raster sizes. */
+	private static final TreeMap<Integer, PuzzleBoard> boards = new TreeMap<Integer, PuzzleBoard>();
+	
+	/** The store of the current game, shared by activity instances to write snapshots in order. */
+	private static GameStateStore stateStore;
+	
+	/** The random number generator shuffling new games. */
+	private final Random random = new Random();
+	
+	/** The generator of new games. */
+	private final PuzzleGenerator generator = new PuzzleGenerator(random);
 	
 	/** The main view. */
 	private PuzzleView view;
 	
-	public PuzzleActivity()
-	{
-		bitmapOptions.inSampleSize = 1;
-	}
+	/** The pipeline loading and slicing the images in the background. */
+	private ImagePipeline pipeline;
+	
+	/** The recorder of played games or null if the recording couldn't be opened. */
+	private GameRecorder recorder;
+	
+	/** The URI of the chosen image or null for the default image. */
+	private Uri imageUri;
 	
 	/**
 	 * Converts board indexes to an integer.
@@ -87,7 +125,69 @@ public class PuzzleActivity extends Activity {
 	 */
 	public PuzzleBoard getBoard()
 	{
-		return PuzzleBoard.getBoard(this, getRasterSize());
+		int size = getRasterSize();
+		PuzzleBoard board = boards.get(size);
+		if (board == null)
+		{
+			board = new PuzzleBoard(size);
+			board.addListener(this);
+			if (recorder != null)
+			{
+				board.addListener(recorder);
+			}
+			
+			boards.put(size, board);
+		}
+		
+		return board;
+	}
+	
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onGameFinished(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onGameFinished(PuzzleBoard board) {
+		// show toast for congratulations
+		AndroidExtensions.showCenteredToast(getApplicationContext(), R.string.congratulations, true);
+		requestRender();
+	}
+	
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onGameStarted(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onGameStarted(PuzzleBoard board) {
+		requestRender();
+	}
+	
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onEmptyFieldMoved(sk.flexoft.android.puzzle.core.PuzzleBoard, int, int)
+	 */
+	@Override
+	public void onEmptyFieldMoved(PuzzleBoard board, int direction, int count) {
+		if (view != null)
+		{
+			view.requestRender(board, direction, count);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onBoardRestored(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onBoardRestored(PuzzleBoard board) {
+		requestRender();
+	}
+	
+	/**
+	 * Asks the view to draw the changed board.
+	 */
+	private void requestRender()
+	{
+		if (view != null)
+		{
+			view.requestRender();
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -101,14 +201,81 @@ public class PuzzleActivity extends Activity {
 		requestWindowFeature(Window.FEATURE_NO_TITLE);
 		getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN, WindowManager.LayoutParams.FLAG_FULLSCREEN);
 		
-		Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.puzzle, bitmapOptions);
+		openRecorder();
+		
+		// boards survive the activity, so make them report to the current instance
+		for (PuzzleBoard board : boards.values())
+		{
+			board.addListener(this);
+			if (recorder != null)
+			{
+				board.addListener(recorder);
+			}
+		}
+		
+		if (stateStore == null)
+		{
+			stateStore = new GameStateStore(new File(getFilesDir(), STATE_FILE));
+		}
+		
+		byte[] snapshot = savedInstanceState != null ? savedInstanceState.getByteArray(STATE_KEY) : null;
+		if (snapshot == null)
+		{
+			snapshot = stateStore.load();
+		}
+		
+		boolean restored = snapshot != null && restoreGame(snapshot);
 		
-		view = new PuzzleView(this, bitmap);
+		// the view shows a placeholder until the image is loaded and sliced
+		pipeline = new ImagePipeline();
+		view = new PuzzleView(this, pipeline);
+		showImage(imageUri, false);
+		
+		if (!restored)
+		{
+			startNewGame();
+		}
+		else if (recorder != null)
+		{
+			// the recorder knows only the games started by this instance
+			recorder.resume(getBoard());
+		}
 		
-		getBoard().shuffle();
 		setContentView(view);
 	}
 	
+	/* (non-Javadoc)
+	 * @see android.app.Activity#onSaveInstanceState(android.os.Bundle)
+	 */
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putByteArray(STATE_KEY, captureGame());
+	}
+	
+	/* (non-Javadoc)
+	 * @see android.app.Activity#onDestroy()
+	 */
+	@Override
+	protected void onDestroy() {
+		Log.d(TAG, "onDestroy");
+		view.release();
+		pipeline.shutdown();
+		for (PuzzleBoard board : boards.values())
+		{
+			board.removeListener(this);
+			board.removeListener(recorder);
+		}
+		
+		if (recorder != null)
+		{
+			recorder.close();
+			recorder = null;
+		}
+		
+		super.onDestroy();
+	}
+
 	/* (non-Javadoc)
 	 * @see android.app.Activity#onPause()
 	 */
@@ -120,6 +287,13 @@ public class PuzzleActivity extends Activity {
 		{
 			view.pause();
 		}
+		
+		if (recorder != null)
+		{
+			recorder.flush();
+		}
+		
+		stateStore.save(captureGame());
 	}
 
 	/* (non-Javadoc)
@@ -135,6 +309,24 @@ public class PuzzleActivity extends Activity {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see android.app.Activity#onTrimMemory(int)
+	 */
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		view.trimMemory(level);
+	}
+
+	/* (non-Javadoc)
+	 * @see android.app.Activity#onLowMemory()
+	 */
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		view.trimMemory(TRIM_MEMORY_COMPLETE);
+	}
+
 	/* (non-Javadoc)
 	 * @see android.app.Activity#onCreateOptionsMenu(android.view.Menu)
 	 */
@@ -145,6 +337,18 @@ public class PuzzleActivity extends Activity {
 	    return true;
 	}
 
+	/* (non-Javadoc)
+	 * @see android.app.Activity#onPrepareOptionsMenu(android.view.Menu)
+	 */
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		PuzzleBoard board = getBoard();
+		menu.findItem(PuzzleConfiguration.level).setChecked(true);
+		menu.findItem(R.id.menu_undo).setEnabled(board.canUndo());
+		menu.findItem(R.id.menu_redo).setEnabled(board.canRedo());
+		return super.onPrepareOptionsMenu(menu);
+	}
+
 	/* (non-Javadoc)
 	 * @see android.app.Activity#onOptionsItemSelected(android.view.MenuItem)
 	 */
@@ -152,14 +356,29 @@ public class PuzzleActivity extends Activity {
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
         case R.id.menu_new_game:
-            getBoard().shuffle();
+            startNewGame();
             return true;
         case R.id.menu_about:
         	showAboutBox();
             return true;
+        case R.id.menu_undo:
+        	if (getBoard().canUndo())
+        	{
+        		getBoard().undo();
+        	}
+            return true;
+        case R.id.menu_redo:
+        	if (getBoard().canRedo())
+        	{
+        		getBoard().redo();
+        	}
+            return true;
         case R.id.menu_level_easy:
         case R.id.menu_level_medium:
         case R.id.menu_level_hard:
+        case R.id.menu_level_marathon_8:
+        case R.id.menu_level_marathon_16:
+        case R.id.menu_level_marathon_32:
         	if (item.isChecked()) {
         		item.setChecked(false);
         	}
@@ -224,56 +443,256 @@ public class PuzzleActivity extends Activity {
 			Uri uri = data.getData();
             Log.d(TAG, "File Uri: " + uri.toString());
             
-            Bitmap bmp = null;
-            if (uri.getScheme().equals("content"))
-            {
-            	try {
-					InputStream stream = getContentResolver().openInputStream(uri);
-					bmp = BitmapFactory.decodeStream(stream, null, bitmapOptions);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-					// nothing special to do here, the bitmap couldn't be opened
-				}
-            }
-            else if (uri.getScheme().equals("file"))
-            {	
-            	bmp = BitmapFactory.decodeFile(uri.getPath(), bitmapOptions);
-            }
-            
-            if (bmp == null)
-            {
-            	AndroidExtensions.showCenteredToast(getApplicationContext(), R.string.err_invalid_image, false);
-            }
-            else
-            {
-            	view = new PuzzleView(this, bmp);
-            	getBoard().shuffle();
-            	setContentView(view);
-            }
+            // the current image stays on the screen while the new one is prepared
+            showImage(uri, true);
 		}
 		
 		super.onActivityResult(requestCode, resultCode, data);
 	}
 
+	/**
+	 * Loads an image in the background and passes it to the view, which shows it once it is sliced.
+	 * Loading another image cancels the pending one.
+	 *
+	 * @param uri The image URI or null for the default image.
+	 * @param isPicked true if the user has just picked the image, a new game is started with it then
+	 */
+	private void showImage(final Uri uri, final boolean isPicked)
+	{
+		pipeline.load(new Callable<TileSource>() {
+
+			/* (non-Javadoc)
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public TileSource call() {
+				return loadImage(uri);
+			}
+		}, new ImagePipeline.ImageCallback() {
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.ImagePipeline.ImageCallback#onImageLoaded(sk.flexoft.android.puzzle.util.TileSource)
+			 */
+			@Override
+			public void onImageLoaded(TileSource source) {
+				if (source == null)
+				{
+					if (isPicked)
+					{
+						AndroidExtensions.showCenteredToast(getApplicationContext(), R.string.err_invalid_image, false);
+						
+						// loading the picked image has cancelled loading or slicing the current one
+						if (!view.resumeImage())
+						{
+							showImage(imageUri, false);
+						}
+					}
+					else if (uri != null)
+					{
+						// the image is gone or the permission to read it has expired
+						imageUri = null;
+						showImage(null, false);
+					}
+					
+					return;
+				}
+				
+				if (isPicked)
+				{
+					imageUri = uri;
+					startNewGame();
+				}
+				
+				view.setTileSource(source);
+			}
+		});
+	}
+	
+	/**
+	 * Loads an image, called on the background thread of the pipeline.
+	 *
+	 * @param uri The image URI or null for the default image.
+	 * @return The tiles of the image or null if it couldn't be decoded.
+	 */
+	private TileSource loadImage(Uri uri)
+	{
+		// the image is decoded just as large as the screen needs it
+		DisplayMetrics metrics = getResources().getDisplayMetrics();
+		if (uri == null)
+		{
+			return BitmapLoader.loadResource(getResources(), R.drawable.puzzle, metrics.widthPixels, metrics.heightPixels);
+		}
+		
+		try {
+			return BitmapLoader.loadUri(getContentResolver(), uri, metrics.widthPixels, metrics.heightPixels);
+		} catch (SecurityException e) {
+			// the permission granted with the picking of the image doesn't survive the process
+			Log.w(TAG, "The image can't be read anymore.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the current game.
+	 *
+	 * @return The snapshot.
+	 */
+	private byte[] captureGame()
+	{
+		int level = 0;
+		while (LEVELS[level] != PuzzleConfiguration.level)
+		{
+			level++;
+		}
+		
+		return GameStateStore.capture(level, imageUri == null ? null : imageUri.toString(), getBoard());
+	}
+	
+	/**
+	 * Restores the level, the image and the board of a game snapshot.
+	 * A board still kept by the process is newer than the snapshot, so it is left as it is.
+	 *
+	 * @param snapshot The snapshot.
+	 * @return true if the game has been restored; false if the snapshot is corrupted
+	 */
+	private boolean restoreGame(byte[] snapshot)
+	{
+		try
+		{
+			GameStateStore.SavedGame game = GameStateStore.parse(snapshot);
+			if (game.getLevel() < 0 || game.getLevel() >= LEVELS.length)
+			{
+				return false;
+			}
+			
+			PuzzleConfiguration.level = LEVELS[game.getLevel()];
+			imageUri = game.getImageUri() == null ? null : Uri.parse(game.getImageUri());
+			if (!boards.containsKey(getRasterSize()))
+			{
+				game.restoreBoard(getBoard());
+			}
+			
+			return true;
+		}
+		catch (IOException e)
+		{
+			Log.w(TAG, "The saved game can't be restored.", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Opens the recording the played games are appended to.
+	 */
+	private void openRecorder()
+	{
+		File file = new File(getFilesDir(), RECORDING_FILE);
+		boolean isNew = file.length() == 0;
+		try
+		{
+			recorder = new GameRecorder(new BufferedOutputStream(new FileOutputStream(file, true)), isNew);
+		}
+		catch (FileNotFoundException e)
+		{
+			Log.w(TAG, "The games can't be recorded.", e);
+		}
+	}
+
 	/**
 	 * @return Raster size based on selected level.
 	 */
 	public int getRasterSize()
 	{
-		if (PuzzleConfiguration.level == R.id.menu_level_easy)
+		return getRasterSize(PuzzleConfiguration.level);
+	}
+
+	/**
+	 * Gets the raster size of a level.
+	 *
+	 * @param level The level menu item identifier.
+	 * @return The raster size.
+	 */
+	static int getRasterSize(int level)
+	{
+		if (level == R.id.menu_level_easy)
 		{
 			return 3;
 		}
 		
-		if (PuzzleConfiguration.level == R.id.menu_level_hard)
+		if (level == R.id.menu_level_hard)
 		{
 			return 5;
 		}
 		
+		if (level == R.id.menu_level_marathon_8)
+		{
+			return 8;
+		}
+		
+		if (level == R.id.menu_level_marathon_16)
+		{
+			return 16;
+		}
+		
+		if (level == R.id.menu_level_marathon_32)
+		{
+			return 32;
+		}
+		
 		// use default value for the rest
 		return 4;
 	}
 
+	/**
+	 * @return true if the selected level is one of the large marathon boards; otherwise false
+	 */
+	public boolean isMarathon()
+	{
+		return PuzzleConfiguration.level == R.id.menu_level_marathon_8
+				|| PuzzleConfiguration.level == R.id.menu_level_marathon_16
+				|| PuzzleConfiguration.level == R.id.menu_level_marathon_32;
+	}
+
+	/**
+	 * @return Difficulty of the game based on selected level or null for marathon levels.
+	 */
+	public Difficulty getDifficulty()
+	{
+		if (isMarathon())
+		{
+			return null;
+		}
+		
+		if (PuzzleConfiguration.level == R.id.menu_level_easy)
+		{
+			return Difficulty.Easy;
+		}
+		
+		if (PuzzleConfiguration.level == R.id.menu_level_hard)
+		{
+			return Difficulty.Hard;
+		}
+		
+		return Difficulty.Medium;
+	}
+
+	/**
+	 * Shuffles the board of the current level to the solution length range of the selected difficulty.
+	 * Marathon boards are too large to measure their solution length, so they are shuffled uniformly.
+	 */
+	private void startNewGame()
+	{
+		Difficulty difficulty = getDifficulty();
+		if (difficulty == null)
+		{
+			getBoard().shuffleUniform(random);
+		}
+		else if (!generator.generate(getBoard(), difficulty))
+		{
+			Log.d(TAG, "No board of the requested difficulty found, using the last candidate.");
+		}
+	}
+
 	/**
 	 * Sets the level.
 	 *
@@ -284,7 +703,7 @@ public class PuzzleActivity extends Activity {
 		{
 			PuzzleConfiguration.level = level;
 			view.RefreshActiveScreenInfo();
-			getBoard().shuffle();
+			startNewGame();
 		}
 	}
 	
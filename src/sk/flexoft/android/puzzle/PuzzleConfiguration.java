@@ -9,4 +9,10 @@ public class PuzzleConfiguration {
 	
 	/** The puzzle level. */
 	public static int level = R.id.menu_level_medium;
+	
+	/** 
+	 * Indicates the parts are drawn from a single scaled bitmap per screen layout
+	 * rather than from a separate bitmap per part.
+	 */
+	public static boolean useTextureAtlas = true;
 }
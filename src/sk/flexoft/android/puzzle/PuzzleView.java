@@ -3,17 +3,21 @@
  */
 package sk.flexoft.android.puzzle;
 
-import java.util.TreeMap;
-
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
 import sk.flexoft.android.puzzle.util.AndroidExtensions;
 import sk.flexoft.android.puzzle.util.AndroidExtensions.LogType;
+import sk.flexoft.android.puzzle.util.TileSource;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.Debug;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.Surface;
@@ -24,17 +28,29 @@ import android.view.View;
 /**
  * @author Vladimir Iszer
  * The Class PuzzleView encapsulates the surface drawing.
+ * Images are sliced into screen layouts by an {@link ImagePipeline} in the background. The layout
+ * shown by the render thread is swapped in a single step when its slicing is done; until then the
+ * previous layout stays on the screen if it still fits, otherwise a placeholder is drawn.
  */
-public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.Callback, View.OnTouchListener {
+public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.Callback, View.OnTouchListener, ImagePipeline.SliceCallback {
 
 	/** The Constant TAG. */
 	private static final String TAG = "PuzzleView";
 	
-	/** Multiplier used for hashing rectangle size. */
-	private static final int RECT_HASH_MULTIPLIER = 10000;
+	/** Amount of bits used for hashing a single dimension of rectangle size. */
+	private static final int RECT_HASH_DIMENSION_BITS = 13;
+	
+	/** The cached layouts may take up this fraction of the heap, bitmap pixels are allocated on the heap. */
+	private static final int CACHE_HEAP_FRACTION = 4;
+	
+	/** The tiles of the shown image or null before the first image is sliced. */
+	TileSource tileSource;
+	
+	/** The tiles of an image being sliced to replace the shown one or null. */
+	TileSource pendingSource;
 	
-	/** The bitmap. */
-	Bitmap bitmap;
+	/** The pipeline slicing the images. */
+	private final ImagePipeline pipeline;
 	
 	/** The surface holder. */
 	SurfaceHolder holder;
@@ -48,20 +64,50 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	/** The paint used for interaction related painting. */
 	Paint touchPaint;
 	
+	/** The paint of the placeholder text. */
+	Paint placeholderPaint;
+	
 	/** Flag indicating if application is actively running. */
-	boolean isRunning = false;
+	volatile boolean isRunning = false;
+	
+	/** The lock the render thread waits on for changes. */
+	private final Object renderLock = new Object();
+	
+	/** Indicates the screen has changed since the last frame, guarded by {@link #renderLock}. */
+	private boolean isRenderRequested = false;
+	
+	/** Indicates the whole screen has to be redrawn, guarded by {@link #renderLock}. */
+	private boolean isFullRedrawRequested = false;
+	
+	/** The region changed since the last frame, guarded by {@link #renderLock}. */
+	private final Rect dirtyRect = new Rect();
+	
+	/** The finished state of the board shown by the last frame, used by the render thread only. */
+	private boolean isFinishedStateDrawn = false;
+	
+	/** The target rectangle of a part blitted from the atlas, used by the render thread only. */
+	private final Rect tileRect = new Rect();
+	
+	/** The layout shown by the last frame, used by the render thread only. */
+	private ScreenInfo drawnInfo;
 	
 	/** The rendering thread. */
 	Thread t;
 	
 	/** Currently active rectangle. */
-	Rect activeRect = null;
+	volatile Rect activeRect = null;
 	
 	/** The active rectangle hash. */
 	int activeRectHash = 0;
 	
-	/** The map of views to view related info to avoid recalculating bitmap info when view has changed. */
-	TreeMap<Integer, ScreenInfo> viewMap = new TreeMap<Integer, ScreenInfo>();
+	/** The layout drawn by the render thread or null while it is being sliced. */
+	volatile ScreenInfo activeInfo = null;
+	
+	/** The lock the render thread holds while drawing a frame. */
+	private final Object drawLock = new Object();
+	
+	/** The cache of layouts to avoid slicing the image again when the view has changed, used by the UI thread only. */
+	private final ScreenInfoCache cache = new ScreenInfoCache(Runtime.getRuntime().maxMemory() / CACHE_HEAP_FRACTION, drawLock);
 
 	/** The main application activity. */
 	PuzzleActivity puzzleActivity;
@@ -75,9 +121,9 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	/**
 	 * Constructor of the PuzzleView class. 
 	 * @param context The activity creating this instance.
-	 * @bitmap the bitmap to be used for story board
+	 * @param pipeline The pipeline slicing the images.
 	 */
-	public PuzzleView(Context context, Bitmap bitmap) {
+	public PuzzleView(Context context, ImagePipeline pipeline) {
 		super(context);
 		
 		if (context == null)
@@ -85,12 +131,12 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 			throw new IllegalArgumentException("context");
 		}
 		
-		if (bitmap == null)
+		if (pipeline == null)
 		{
-			throw new IllegalArgumentException("bitmap");
+			throw new IllegalArgumentException("pipeline");
 		}
 		
-		this.bitmap = bitmap;
+		this.pipeline = pipeline;
 		puzzleActivity = (PuzzleActivity)context;
 		
 		rasterPaint = new Paint();
@@ -108,6 +154,12 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		rasterBorderPaint.setStrokeWidth(1);
 		rasterBorderPaint.setStyle(Paint.Style.STROKE);
 		
+		placeholderPaint = new Paint();
+		placeholderPaint.setColor(Color.LTGRAY);
+		placeholderPaint.setAntiAlias(true);
+		placeholderPaint.setTextAlign(Paint.Align.CENTER);
+		placeholderPaint.setTextSize(24 * context.getResources().getDisplayMetrics().density);
+		
 		holder = getHolder();
 		holder.addCallback(this);
 		
@@ -121,7 +173,11 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	 */
 	public void pause()
 	{
-		isRunning = false;
+		synchronized (renderLock)
+		{
+			isRunning = false;
+			renderLock.notify();
+		}
 		
 		if (t == null)
 		{
@@ -150,73 +206,382 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		
 		t = new Thread(this);
 		isRunning = true;
+		
+		// the new thread has to draw the current state once
+		requestRender();
 		t.start();
 		
 		Log.d(TAG, "Resumed");
 	}
 	
 	
+	/**
+	 * Shows a new image. The current image stays on the screen until the new one is sliced for
+	 * the current layout.
+	 *
+	 * @param source The tiles of the new image.
+	 */
+	public void setTileSource(TileSource source)
+	{
+		if (source == null)
+		{
+			throw new IllegalArgumentException("source");
+		}
+		
+		if (pendingSource != null)
+		{
+			// the image being sliced has been superseded
+			pipeline.recycle(pendingSource);
+		}
+		
+		pendingSource = source;
+		updateLayout();
+	}
+	
+	/**
+	 * Releases the cached layouts and the images. The view can't be shown afterwards.
+	 */
+	public void release()
+	{
+		pause();
+		activate(null);
+		cache.clear();
+		if (tileSource != null)
+		{
+			pipeline.recycle(tileSource);
+			tileSource = null;
+		}
+		
+		if (pendingSource != null)
+		{
+			pipeline.recycle(pendingSource);
+			pendingSource = null;
+		}
+	}
+	
+	/**
+	 * Releases cached layouts as the system runs low on memory. The layout on the screen is kept
+	 * unless the surface is gone.
+	 *
+	 * @param level The trim level passed to {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+	 */
+	public void trimMemory(int level)
+	{
+		pipeline.cancelPrewarm();
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+		{
+			cache.evictAll();
+		}
+		else
+		{
+			cache.trimToSize(cache.getMaxByteCount() / 2);
+		}
+		
+		AndroidExtensions.Log(LogType.Debug, TAG, "Trimmed memory at level %d: %s.", level, cache);
+	}
+	
 	/* (non-Javadoc)
-	 * @see java.lang.Runnable#run()
+	 * @see sk.flexoft.android.puzzle.ImagePipeline.SliceCallback#onSliced(sk.flexoft.android.puzzle.util.TileSource, sk.flexoft.android.puzzle.ScreenInfo)
 	 */
 	@Override
-	public void run() {
+	public void onSliced(TileSource source, ScreenInfo info) {
+		int key = hashLayout(info.screenWidth, info.screenHeight, info.parts);
+		if (source == pendingSource)
+		{
+			if (key != activeRectHash)
+			{
+				// the layout has changed since, the new image waits for the slicing of the current one
+				info.recycle();
+				return;
+			}
+			
+			// the layouts of the previous image are dropped along with it once the new one is shown
+			activate(info);
+			cache.evictAll();
+			if (tileSource != null)
+			{
+				pipeline.recycle(tileSource);
+			}
+			
+			tileSource = source;
+			pendingSource = null;
+		}
+		else if (source != tileSource || cache.contains(key))
+		{
+			// a layout of a dropped image or one requested while it was being prewarmed
+			info.recycle();
+			return;
+		}
+		else if (key == activeRectHash)
+		{
+			activate(info);
+		}
+		
+		cache.put(key, info);
+		AndroidExtensions.Log(LogType.Debug, TAG, "Layout cache: %s.", cache);
+		if (key == activeRectHash)
+		{
+			prewarm();
+		}
+	}
+	
+	/**
+	 * Queues the layouts of the rotated surface and of the other levels to be sliced in advance,
+	 * so that rotating the device or switching the level finds them cached. The rotated layout
+	 * of the current level goes first, followed by the other levels in the current orientation
+	 * and then in the rotated one. Only the layouts fitting the free part of the cache budget
+	 * are queued, so prewarming never evicts anything.
+	 */
+	private void prewarm()
+	{
+		pipeline.cancelPrewarm();
+		Rect rect = activeRect;
+		if (rect == null || tileSource == null)
+		{
+			return;
+		}
+		
+		int width = rect.width();
+		int height = rect.height();
+		int rasterSize = puzzleActivity.getRasterSize();
 		
-		boolean isFinishedStateDrawn = false;
-		while (isRunning)
+		// the atlas or the parts are as large as the screen at most
+		long layoutBytes = 4L * width * height;
+		long freeBytes = cache.getMaxByteCount() - cache.getByteCount();
+		for (int pass = 0; pass < 3; pass++)
 		{
-			// in case the puzzle is finished by last move, draw the new state only once
-			if (puzzleActivity.getBoard().isFinished())
+			boolean isRotated = pass != 1;
+			if (isRotated && width == height)
 			{
-				if (!isFinishedStateDrawn)
+				continue;
+			}
+			
+			for (int level : PuzzleActivity.LEVELS)
+			{
+				int parts = PuzzleActivity.getRasterSize(level);
+				if ((pass == 0) != (parts == rasterSize))
 				{
-					Log.d(TAG, "Seeting isFinishedStateDrawn to true.");
-					isFinishedStateDrawn = true;
+					continue;
 				}
-				else
+				
+				int layoutWidth = isRotated ? height : width;
+				int layoutHeight = isRotated ? width : height;
+				if (freeBytes < layoutBytes)
+				{
+					return;
+				}
+				
+				if (!cache.contains(hashLayout(layoutWidth, layoutHeight, parts)))
 				{
-					try 
+					pipeline.prewarm(tileSource, layoutWidth, layoutHeight, parts, this);
+					freeBytes -= layoutBytes;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Makes a layout the one drawn by the render thread.
+	 *
+	 * @param info The layout or null for the placeholder.
+	 */
+	private void activate(ScreenInfo info)
+	{
+		activeInfo = info;
+		cache.setRetained(info);
+		requestRender();
+	}
+	
+	/**
+	 * Asks the render thread to draw the whole screen again, e.g. after the level has changed.
+	 * Requests made before the thread gets to drawing are served by a single frame.
+	 */
+	public void requestRender()
+	{
+		synchronized (renderLock)
+		{
+			isFullRedrawRequested = true;
+			isRenderRequested = true;
+			renderLock.notify();
+		}
+	}
+	
+	/**
+	 * Asks the render thread to draw a single field again.
+	 *
+	 * @param fieldIdx The packed field index; negative values are ignored.
+	 */
+	public void requestRender(int fieldIdx)
+	{
+		if (fieldIdx < 0)
+		{
+			return;
+		}
+		
+		ScreenInfo info = activeInfo;
+		if (info == null || fieldIdx >= info.parts * info.parts)
+		{
+			requestRender();
+			return;
+		}
+		
+		synchronized (renderLock)
+		{
+			// the raster lines lie on the field edges
+			Rect part = info.targetParts[fieldIdx / info.parts][fieldIdx % info.parts];
+			dirtyRect.union(part.left - 1, part.top - 1, part.right + 1, part.bottom + 1);
+			isRenderRequested = true;
+			renderLock.notify();
+		}
+	}
+	
+	/**
+	 * Asks the render thread to draw the fields changed by moves of the empty field.
+	 *
+	 * @param board The board after the moves.
+	 * @param direction The direction of the moves.
+	 * @param count Amount of moves.
+	 */
+	public void requestRender(PuzzleBoard board, int direction, int count)
+	{
+		// the moved run lies in a line, so its end fields span the whole run
+		int first = board.getEmptyCell();
+		int last = first;
+		int opposite = BoardGeometry.opposite(direction);
+		for (int i = 0; i < count && last != BoardGeometry.NO_CELL; i++)
+		{
+			last = board.getGeometry().getNeighbour(last, opposite);
+		}
+		
+		if (last == BoardGeometry.NO_CELL)
+		{
+			requestRender();
+			return;
+		}
+		
+		requestRender(first);
+		requestRender(last);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		
+		long startTime = SystemClock.elapsedRealtime();
+		long startCpuTime = Debug.threadCpuTimeNanos();
+		int frames = 0;
+		boolean isFullRedraw;
+		Rect frameRect = new Rect();
+		
+		while (true)
+		{
+			// sleep until something changes, there is nothing to animate in between
+			synchronized (renderLock)
+			{
+				while (isRunning && !isRenderRequested)
+				{
+					try
 					{
-						Thread.sleep(200);
-						continue;
-					} 
-					catch (InterruptedException e) 
+						renderLock.wait();
+					}
+					catch (InterruptedException e)
 					{
-						// thread termination was requested during the sleep
+						// thread termination was requested during the wait
 						return;
 					}
 				}
-			}
-			else
-			{
-				isFinishedStateDrawn = false;
+				
+				if (!isRunning)
+				{
+					break;
+				}
+				
+				isRenderRequested = false;
+				isFullRedraw = isFullRedrawRequested || dirtyRect.isEmpty();
+				frameRect.set(dirtyRect);
+				isFullRedrawRequested = false;
+				dirtyRect.setEmpty();
 			}
 			
-			Surface s = holder.getSurface(); 
-			if (s == null || !s.isValid() || activeRect == null || activeRectHash == 0 || !viewMap.containsKey(activeRectHash))
+			// evicted layouts are recycled by the UI thread only between frames
+			synchronized (drawLock)
 			{
-				continue;
-			}
-			
-			Canvas c = holder.lockCanvas();
-			
-			try
-			{
-				ScreenInfo info = viewMap.get(activeRectHash);
-				PuzzleBoard board = puzzleActivity.getBoard();
-				
-				if (info != null && board != null && info.parts == board.getSize())
+				if (drawFrame(frameRect, isFullRedraw))
 				{
-					drawScreen(c, info, board);	
+					frames++;
 				}
 			}
-			finally
+		}
+		
+		AndroidExtensions.Log(LogType.Debug, TAG, "Render thread drew %d frames using %d ms of CPU time in %d ms.",
+				frames, (Debug.threadCpuTimeNanos() - startCpuTime) / 1000000, SystemClock.elapsedRealtime() - startTime);
+ 	}
+	
+	/**
+	 * Draws a single frame.
+	 *
+	 * @param frameRect The region to be redrawn, it is updated to the region actually locked.
+	 * @param isFullRedraw true to redraw the whole surface; false to redraw the region only
+	 * @return true if the frame has been drawn; false if the surface is not ready
+	 */
+	private boolean drawFrame(Rect frameRect, boolean isFullRedraw)
+	{
+		// an invalid surface is drawn after surfaceChanged requests a frame
+		Surface s = holder.getSurface(); 
+		Rect surfaceRect = activeRect;
+		if (s == null || !s.isValid() || surfaceRect == null)
+		{
+			return false;
+		}
+		
+		// the layout may be swapped by the UI thread at any time, so it is read once per frame
+		ScreenInfo info = activeInfo;
+		PuzzleBoard board = puzzleActivity.getBoard();
+		boolean isLayoutReady = info != null && board != null && info.parts == board.getSize()
+				&& info.screenWidth == surfaceRect.width() && info.screenHeight == surfaceRect.height();
+		
+		// a new layout and the finished state tint change the whole board
+		if (!isLayoutReady || info != drawnInfo || board.isFinished() != isFinishedStateDrawn)
+		{
+			isFullRedraw = true;
+		}
+		
+		// the canvas is handed out at most once per display refresh, which paces successive frames;
+		// a partial lock may enlarge the rectangle, e.g. when the buffer content was lost
+		if (isFullRedraw)
+		{
+			frameRect.set(surfaceRect);
+		}
+		
+		Canvas c = holder.lockCanvas(frameRect);
+		if (c == null)
+		{
+			return false;
+		}
+		
+		try
+		{
+			if (isLayoutReady)
 			{
-				holder.unlockCanvasAndPost(c);
+				drawScreen(c, info, board, frameRect);
+				isFinishedStateDrawn = board.isFinished();
+				drawnInfo = info;
+			}
+			else
+			{
+				drawPlaceholder(c, surfaceRect);
+				drawnInfo = null;
 			}
 		}
- 	}
-
+		finally
+		{
+			holder.unlockCanvasAndPost(c);
+		}
+		
+		return true;
+	}
 	
 	/* (non-Javadoc)
 	 * @see android.view.SurfaceHolder.Callback#surfaceChanged(android.view.SurfaceHolder, int, int, int)
@@ -226,17 +591,8 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 			int height) {
 		
 		AndroidExtensions.Log(LogType.Debug, TAG, "surfaceChanged: [%d, %d]", width, height);
-		pause();
 		activeRect = new Rect(0, 0, width, height);
-		int rasterSize = puzzleActivity.getRasterSize();
-		activeRectHash = hashRectSize(activeRect, rasterSize);
-		if (!viewMap.containsKey(activeRectHash))
-		{
-			viewMap.put(activeRectHash, new ScreenInfo(bitmap, activeRect.width(), activeRect.height(), rasterSize));
-		}
-		
-		AndroidExtensions.Log(LogType.Debug, TAG, "view contains %d items", viewMap.size());
-		resume();
+		updateLayout();
 	}
 
 	/* (non-Javadoc)
@@ -259,6 +615,28 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		
 		activeRect = null;
 		activeRectHash = 0;
+		pipeline.cancelSlicing();
+		pipeline.cancelPrewarm();
+		
+		// nothing is drawn until the surface is back, so the layout may be evicted as well
+		activate(null);
+	}
+	
+	/**
+	 * Shows the current image again after loading another one has failed, as the load has
+	 * cancelled the slicing of the current layout.
+	 *
+	 * @return true if the view has an image; false if it has none and one has to be loaded
+	 */
+	public boolean resumeImage()
+	{
+		if (tileSource == null && pendingSource == null)
+		{
+			return false;
+		}
+		
+		updateLayout();
+		return true;
 	}
 	
 	/**
@@ -266,24 +644,39 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	 */
 	public void RefreshActiveScreenInfo()
 	{
-		pause();
 		Rect rect = holder.getSurfaceFrame();
 		if (rect != null && rect.width() != 0 && rect.height() != 0)
 		{
 			AndroidExtensions.Log(LogType.Debug, TAG, "RefreshActiveScreenInfo: [%d, %d]", rect.width(), rect.height());
-			
 			activeRect = new Rect(rect);
-			int rasterSize = puzzleActivity.getRasterSize();
-			activeRectHash = hashRectSize(activeRect, rasterSize);
-			if (!viewMap.containsKey(activeRectHash))
-			{
-				viewMap.put(activeRectHash, new ScreenInfo(bitmap, activeRect.width(), activeRect.height(), rasterSize));
-			}
-			
-			AndroidExtensions.Log(LogType.Debug, TAG, "view contains %d items", viewMap.size());
+			updateLayout();
+		}
+	}
+	
+	/**
+	 * Shows the layout of the active rectangle and level, slicing it in the background unless it is cached.
+	 * While a new image is being sliced, the layout of the current image is shown in the meantime.
+	 */
+	private void updateLayout()
+	{
+		Rect rect = activeRect;
+		if (rect == null)
+		{
+			return;
 		}
 		
-		resume();
+		int rasterSize = puzzleActivity.getRasterSize();
+		activeRectHash = hashLayout(rect.width(), rect.height(), rasterSize);
+		ScreenInfo info = cache.get(activeRectHash);
+		activate(info);
+		
+		TileSource source = pendingSource != null ? pendingSource : tileSource;
+		if (source == null || (info != null && pendingSource == null))
+		{
+			return;
+		}
+		
+		pipeline.slice(source, rect.width(), rect.height(), rasterSize, this);
 	}
 	
 	/**
@@ -314,18 +707,30 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	}
 	
 	/**
-	 * Hashes rectangle size into integer.
+	 * Hashes a layout into integer.
 	 *
-	 * @param rect the rectangle to be hashed
+	 * @param width The width of the screen.
+	 * @param height The height of the screen.
 	 * @param level The level to be used for hashing
-	 * @return hashed size of the rectangle in string
+	 * @return hashed size of the layout
 	 */
-	private int hashRectSize(Rect rect, int level)
+	private int hashLayout(int width, int height, int level)
 	{
-		assert rect != null;
 		assert level > 0;
 		
-		return rect.width() * RECT_HASH_MULTIPLIER + rect.height() + level;
+		// levels go up to 32x32, so adding them to the size would make different views collide
+		return (((level << RECT_HASH_DIMENSION_BITS) | width) << RECT_HASH_DIMENSION_BITS) | height;
+	}
+	
+	/**
+	 * Draws the placeholder shown while the layout is being sliced.
+	 * @param canvas The canvas to draw into.
+	 * @param rect The surface rectangle.
+	 */
+	private void drawPlaceholder(Canvas canvas, Rect rect)
+	{
+		canvas.drawColor(Color.BLACK);
+		canvas.drawText(getContext().getString(R.string.preparing_image), rect.centerX(), rect.centerY(), placeholderPaint);
 	}
 	
 	/**
@@ -333,8 +738,9 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	 * @param canvas The canvas to draw into.
 	 * @param scrInfo Visual content related to current screen layout. 
 	 * @param board The game board providing current state of the game.
+	 * @param dirty The region to be redrawn, the canvas is clipped to it.
 	 */
-	private void drawScreen(Canvas canvas, ScreenInfo scrInfo, PuzzleBoard board)
+	private void drawScreen(Canvas canvas, ScreenInfo scrInfo, PuzzleBoard board, Rect dirty)
 	{
 		assert canvas != null;
 		assert scrInfo != null;
@@ -343,18 +749,31 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		canvas.drawColor(Color.BLACK);
 
 		// canvas.drawBitmap(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()) , scrInfo.targetRect, null);
-		for (int i = 0; i < scrInfo.parts; i++)
+		int fieldCount = scrInfo.parts * scrInfo.parts;
+		for (int i = 0; i < fieldCount; i++)
 		{
-			for(int j = 0; j < scrInfo.parts; j++)
+			// fields outside of the dirty region keep their pixels from the previous frame
+			if (!Rect.intersects(scrInfo.targetParts[i / scrInfo.parts][i % scrInfo.parts], dirty))
 			{
-				int bmpCompositeIndex = board.getPuzzleIndexAt(i, j);
-				assert bmpCompositeIndex >= 0 || bmpCompositeIndex < Math.pow(scrInfo.parts, 2) || bmpCompositeIndex == PuzzleBoard.EMPTY_FIELD_IDX;
-				
-				// empty field is left black
-				if (bmpCompositeIndex != PuzzleBoard.EMPTY_FIELD_IDX)
+				continue;
+			}
+			
+			int bmpCompositeIndex = board.getPuzzleIndexAt(i);
+			assert bmpCompositeIndex >= 0 || bmpCompositeIndex < fieldCount || bmpCompositeIndex == PuzzleBoard.EMPTY_FIELD_IDX;
+
+			// empty field is left black
+			if (bmpCompositeIndex != PuzzleBoard.EMPTY_FIELD_IDX)
+			{
+				Rect targetPart = scrInfo.targetParts[i / scrInfo.parts][i % scrInfo.parts];
+				if (scrInfo.atlas != null)
+				{
+					Rect atlasPart = scrInfo.atlasParts[bmpCompositeIndex / scrInfo.parts][bmpCompositeIndex % scrInfo.parts];
+					tileRect.set(targetPart.left, targetPart.top, targetPart.left + scrInfo.partWidth, targetPart.top + scrInfo.partHeight);
+					canvas.drawBitmap(scrInfo.atlas, atlasPart, tileRect, null);
+				}
+				else
 				{
 					Bitmap bmpPart = scrInfo.bmpParts[bmpCompositeIndex / scrInfo.parts][bmpCompositeIndex % scrInfo.parts];
-					Rect targetPart = scrInfo.targetParts[i][j]; 
 					canvas.drawBitmap(bmpPart, targetPart.left, targetPart.top, null);
 				}
 			}
@@ -373,10 +792,12 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		
 		canvas.drawRect(scrInfo.targetRect, rasterBorderPaint);
 		
-		if (gestureRectIdx != -1)
+		// the UI thread may move the highlight meanwhile
+		int highlightedIdx = gestureRectIdx;
+		if (highlightedIdx != -1)
 		{
-			int[] indexes = PuzzleActivity.int2Indexes(gestureRectIdx, scrInfo.parts);
-			if (board.isFieldExchangeable(indexes[0], indexes[1]))
+			int[] indexes = PuzzleActivity.int2Indexes(highlightedIdx, scrInfo.parts);
+			if (board.isFieldSlidable(highlightedIdx))
 			{
 				touchPaint.setColor(Color.LTGRAY);
 				touchPaint.setAlpha(64);
@@ -414,24 +835,27 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		{
 			AndroidExtensions.Log(LogType.Debug, TAG, "Pointer %d up -> finishing gesture.", gesturePointerId);
 			
+			int highlightedIdx = gestureRectIdx;
+			int releasedIdx = -1;
 			if (activeRect != null)
 			{
-				int key = activeRectHash;
-				if (viewMap.containsKey(key))
+				ScreenInfo info = activeInfo;
+				if (info != null)
 				{
-					ScreenInfo info = viewMap.get(key);
-					assert info != null;
-					gestureRectIdx = info.getRectIdxFromPoint((int)m.getX(), (int)m.getY());
-					
-					
-					if (puzzleActivity.getBoard().isFieldExchangeable(gestureRectIdx))
-					{
-						puzzleActivity.getBoard().exchange(gestureRectIdx);
-					}
+					releasedIdx = info.getRectIdxFromPoint((int)m.getX(), (int)m.getY());
 				}				
 			}
 			
+			// the highlight disappears even if the board doesn't change, so it is reset before its field is requested
 			gesturePointerId = gestureRectIdx = -1;
+			requestRender(highlightedIdx);
+			requestRender(releasedIdx);
+			
+			// a field further in the row or column of the empty field slides the whole run at once
+			if (puzzleActivity.getBoard().isFieldSlidable(releasedIdx))
+			{
+				puzzleActivity.getBoard().slide(releasedIdx);
+			}
 		}
 	}
 	
@@ -440,7 +864,9 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 	 * @param m Details about the cancellation.
 	 */
 	private void handleTouchCancel(MotionEvent m) {
+		int highlightedIdx = gestureRectIdx;
 		gesturePointerId = gestureRectIdx = -1;
+		requestRender(highlightedIdx);
 	}
 
 	/**
@@ -452,12 +878,18 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		{
 			if (m.getPointerId(i) == gesturePointerId && activeRect != null)
 			{
-				int key = activeRectHash;
-				if (viewMap.containsKey(key))
+				ScreenInfo info = activeInfo;
+				if (info != null)
 				{
-					ScreenInfo info = viewMap.get(key);
-					assert info != null;
-					gestureRectIdx = info.getRectIdxFromPoint((int)m.getX(), (int)m.getY());
+					int rectIdx = info.getRectIdxFromPoint((int)m.getX(), (int)m.getY());
+					if (rectIdx != gestureRectIdx)
+					{
+						// the previous field must not be drawn before the highlight has moved away
+						int previousIdx = gestureRectIdx;
+						gestureRectIdx = rectIdx;
+						requestRender(previousIdx);
+						requestRender(rectIdx);
+					}
 					break;
 				}
 			}
@@ -474,13 +906,12 @@ public class PuzzleView extends SurfaceView implements Runnable, SurfaceHolder.C
 		gesturePointerId = m.getPointerId(m.getActionIndex());
 		if (activeRect != null)
 		{
-			int key = activeRectHash;
-			if (viewMap.containsKey(key))
+			ScreenInfo info = activeInfo;
+			if (info != null)
 			{
 				AndroidExtensions.Log(LogType.Debug, TAG, "Pointer %d down -> starting gesture.", gesturePointerId);
-				ScreenInfo info = viewMap.get(key);
-				assert info != null;
 				gestureRectIdx = info.getRectIdxFromPoint((int)m.getX(), (int)m.getY());
+				requestRender(gestureRectIdx);
 			}
 		}
 	}
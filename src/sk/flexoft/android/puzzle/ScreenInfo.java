@@ -1,8 +1,14 @@
 package sk.flexoft.android.puzzle;
 
+import java.util.concurrent.CancellationException;
+
 import sk.flexoft.android.puzzle.util.AndroidExtensions;
+import sk.flexoft.android.puzzle.util.AndroidExtensions.LogType;
+import sk.flexoft.android.puzzle.util.TileSource;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.SystemClock;
 
 /**
  * @author Vladimir Iszer
@@ -10,6 +16,9 @@ import android.graphics.Rect;
  */
 public class ScreenInfo {
 	
+	/** The Constant TAG. */
+	private static final String TAG = "ScreenInfo";
+	
 	/** The width of the screen	 */
 	int screenWidth;
 	
@@ -19,28 +28,41 @@ public class ScreenInfo {
 	/** Rectangle the bitmap has to fit in	 */
 	Rect targetRect;
 	
-	/** Individual small Bitmaps composing together the original bitmap */
+	/** Individual small Bitmaps composing together the original bitmap, null in the texture atlas mode */
 	Bitmap[][] bmpParts;
 	
+	/** The bitmap scaled to the raster of all parts at once, null unless in the texture atlas mode */
+	Bitmap atlas;
+	
+	/** The rectangles of individual parts within the atlas, null unless in the texture atlas mode */
+	Rect[][] atlasParts;
+	
 	/** Individual small rectangles composing together the target rectangle */
 	Rect[][] targetParts;
 	
 	/** Amount of parts along one square side the bitmap and screen has to be split to. */
 	int parts;
 	
+	/** The width of a single target part. */
+	int partWidth;
+	
+	/** The height of a single target part. */
+	int partHeight;
+	
 	/**
 	 * The constructor.
-	 * @param bitmap - The original bitmap to be split
+	 * @param source - The tiles of the original image to be split
 	 * @param scrWidth The screen width
 	 * @param scrHeight The screen height
 	 * @param parts Amount of parts along one square side the bitmap and screen has to be split to. 
 	 * @throws IllegalArgumentException
+	 * @throws CancellationException Signals the slicing thread has been interrupted.
 	 */
-	public ScreenInfo(Bitmap bitmap, int scrWidth, int scrHeight, int parts) throws IllegalArgumentException 
+	public ScreenInfo(TileSource source, int scrWidth, int scrHeight, int parts) throws IllegalArgumentException 
 	{
-		if (bitmap == null)
+		if (source == null)
 		{
-			throw new IllegalArgumentException("bitmap");
+			throw new IllegalArgumentException("source");
 		}
 		
 		if (parts < 1)
@@ -53,8 +75,8 @@ public class ScreenInfo {
 		screenHeight = scrHeight;
 		
 		int bmpWidth, bmpHeight;
-		bmpWidth = bitmap.getWidth();
-		bmpHeight = bitmap.getHeight();
+		bmpWidth = source.getWidth();
+		bmpHeight = source.getHeight();
 		
 		if (screenWidth == bmpWidth && screenHeight == bmpHeight)
 		{
@@ -79,7 +101,7 @@ public class ScreenInfo {
 			targetRect.right = scrWidth - 1;
 		}
 		
-		InitParts(bitmap);
+		InitParts(source);
 	}
 	
 	/**
@@ -90,50 +112,132 @@ public class ScreenInfo {
 	 * @return The rectangle index from point if the point is inside; otherwise -1
 	 */
 	public int getRectIdxFromPoint(int x, int y) {
-
 		
-		if (targetRect.contains(x, y))
+		if (!targetRect.contains(x, y) || partWidth == 0 || partHeight == 0)
 		{
-			for(int i = 0; i < parts; i++)
+			return -1;
+		}
+		
+		// parts are laid out in a regular grid, so the part follows from the offset directly
+		int i = (x - targetRect.left) / partWidth;
+		int j = (y - targetRect.top) / partHeight;
+		if (i >= parts || j >= parts)
+		{
+			// the rest of the target rectangle which doesn't divide evenly
+			return -1;
+		}
+		
+		return PuzzleActivity.indexes2Int(i, j, parts);
+	}
+	
+	/**
+	 * @return Amount of bytes of the bitmaps of the parts.
+	 */
+	public long getByteCount() {
+		long byteCount = 0;
+		if (atlas != null)
+		{
+			byteCount += atlas.getByteCount();
+		}
+		
+		if (bmpParts != null)
+		{
+			for (Bitmap[] column : bmpParts)
 			{
-				for(int j = 0; j < parts; j++)
+				for (Bitmap part : column)
 				{
-					if (targetParts[i][j].contains(x, y))
+					if (part != null)
 					{
-						return PuzzleActivity.indexes2Int(i, j, parts);
+						byteCount += part.getByteCount();
 					}
 				}
 			}
 		}
 		
-		return -1;
+		return byteCount;
+	}
+	
+	/**
+	 * Releases the bitmaps of the parts. The layout can't be drawn afterwards.
+	 */
+	public void recycle() {
+		if (atlas != null)
+		{
+			atlas.recycle();
+		}
+		
+		if (bmpParts != null)
+		{
+			for (Bitmap[] column : bmpParts)
+			{
+				for (Bitmap part : column)
+				{
+					if (part != null)
+					{
+						part.recycle();
+					}
+				}
+			}
+		}
 	}
 
 	/**
 	 * Initializes raster bitmaps and targets.
 	 *
-	 * @param bitmap The source bitmap.
+	 * @param source The tiles of the source image.
 	 */
-	private void InitParts(Bitmap bitmap) {
-		assert bitmap != null;
+	private void InitParts(TileSource source) {
+		assert source != null;
 		
-		bmpParts = new Bitmap[parts][parts];
+		long start = SystemClock.uptimeMillis();
+		boolean useAtlas = PuzzleConfiguration.useTextureAtlas;
 		targetParts = new Rect[parts][parts];
 		
-		int bmpHorStep = bitmap.getWidth() / parts;
-		int bmpVertStep = bitmap.getHeight() / parts;
+		int bmpHorStep = source.getWidth() / parts;
+		int bmpVertStep = source.getHeight() / parts;
+		
+		partWidth = targetRect.width() / parts;
+		partHeight = targetRect.height() / parts;
 		
-		int partWidth = targetRect.width() / parts;
-		int partHeight = targetRect.height() / parts;
+		Canvas atlasCanvas = null;
+		if (useAtlas)
+		{
+			// a single scaled copy of the raster, the parts are blitted from it by their rectangles
+			atlas = Bitmap.createBitmap(parts * partWidth, parts * partHeight, Bitmap.Config.ARGB_8888);
+			atlasCanvas = new Canvas(atlas);
+			atlasParts = new Rect[parts][parts];
+		}
+		else
+		{
+			bmpParts = new Bitmap[parts][parts];
+		}
 		
 		for (int i = 0; i < parts; i++)
 		{
 			for(int j = 0; j < parts; j++)
 			{
-				bmpParts[i][j] = AndroidExtensions.copyBitmapPart(
-						bitmap, 
-						new Rect(i * bmpHorStep, j * bmpVertStep, ((i + 1) * bmpHorStep) -1, ((j + 1) * bmpVertStep) -1),
-						new Rect(0, 0, partWidth, partHeight));
+				// slicing runs in the background and is abandoned when another image or layout is requested
+				if (Thread.currentThread().isInterrupted())
+				{
+					recycle();
+					throw new CancellationException();
+				}
+				
+				if (useAtlas)
+				{
+					// the atlas is filled part by part, so a region decoder never holds more than a part
+					atlasParts[i][j] = new Rect(i * partWidth, j * partHeight, (i + 1) * partWidth, (j + 1) * partHeight);
+					source.drawTile(
+							new Rect(i * bmpHorStep, j * bmpVertStep, (i + 1) * bmpHorStep, (j + 1) * bmpVertStep),
+							atlasCanvas,
+							atlasParts[i][j]);
+				}
+				else
+				{
+					bmpParts[i][j] = source.decodeTile(
+							new Rect(i * bmpHorStep, j * bmpVertStep, ((i + 1) * bmpHorStep) -1, ((j + 1) * bmpVertStep) -1),
+							partWidth, partHeight);
+				}
 				
 				targetParts[i][j] = new Rect(
 						targetRect.left + i * partWidth, 
@@ -142,6 +246,9 @@ public class ScreenInfo {
 						targetRect.top + (j + 1) * partHeight - 1);
 			}
 		}
+		
+		AndroidExtensions.Log(LogType.Debug, TAG, "Sliced %d x %d parts of [%d, %d] in %d ms%s.", parts, parts,
+				partWidth, partHeight, SystemClock.uptimeMillis() - start, useAtlas ? " into an atlas" : "");
 	}
 
 	/**
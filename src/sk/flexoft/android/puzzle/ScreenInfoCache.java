@@ -0,0 +1,242 @@
+package sk.flexoft.android.puzzle;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Vladimir Iszer
+ * Keeps sliced screen layouts within a budget of bitmap bytes. When the budget is exceeded,
+ * the least recently used layouts are evicted and their bitmaps recycled right away rather
+ * than left to the finalizers. The layout drawn on the screen is retained even if it alone
+ * exceeds the budget. As the render thread may be drawing a layout just replaced, evicted
+ * layouts are recycled under the lock the render thread holds while drawing a frame.
+ * <p>
+ * The cache is meant to be used by the UI thread only.
+ */
+public class ScreenInfoCache {
+
+	/** The layouts by their keys in the order of their use, the least recently used one first. */
+	private final LinkedHashMap<Integer, ScreenInfo> entries = new LinkedHashMap<Integer, ScreenInfo>(16, 0.75f, true);
+
+	/** The lock the render thread holds while drawing a frame. */
+	private final Object drawLock;
+
+	/** The budget of bitmap bytes. */
+	private final long maxByteCount;
+
+	/** The layout which is never evicted or null. */
+	private ScreenInfo retained;
+
+	/** Amount of bitmap bytes of the cached layouts. */
+	private long byteCount;
+
+	/** Amount of lookups which found their layout. */
+	private int hitCount;
+
+	/** Amount of lookups which didn't find their layout. */
+	private int missCount;
+
+	/** Amount of evicted layouts. */
+	private int evictionCount;
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param maxByteCount The budget of bitmap bytes.
+	 * @param drawLock The lock the render thread holds while drawing a frame.
+	 */
+	public ScreenInfoCache(long maxByteCount, Object drawLock)
+	{
+		if (maxByteCount <= 0)
+		{
+			throw new IllegalArgumentException("maxByteCount");
+		}
+
+		if (drawLock == null)
+		{
+			throw new IllegalArgumentException("drawLock");
+		}
+
+		this.maxByteCount = maxByteCount;
+		this.drawLock = drawLock;
+	}
+
+	/**
+	 * Gets a layout and marks it as the most recently used one.
+	 *
+	 * @param key The layout key.
+	 * @return The layout or null if it is not cached.
+	 */
+	public ScreenInfo get(int key)
+	{
+		ScreenInfo info = entries.get(key);
+		if (info == null)
+		{
+			missCount++;
+		}
+		else
+		{
+			hitCount++;
+		}
+
+		return info;
+	}
+
+	/**
+	 * Checks a layout is cached without affecting the order of use or the statistics.
+	 *
+	 * @param key The layout key.
+	 * @return true if the layout is cached; otherwise false
+	 */
+	public boolean contains(int key)
+	{
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Adds a layout and evicts the least recently used ones beyond the budget.
+	 *
+	 * @param key The layout key.
+	 * @param info The layout.
+	 */
+	public void put(int key, ScreenInfo info)
+	{
+		if (info == null)
+		{
+			throw new IllegalArgumentException("info");
+		}
+
+		ScreenInfo previous = entries.put(key, info);
+		byteCount += info.getByteCount();
+		if (previous != null)
+		{
+			byteCount -= previous.getByteCount();
+			if (previous != info)
+			{
+				recycle(previous);
+			}
+		}
+
+		trimToSize(maxByteCount);
+	}
+
+	/**
+	 * Sets the layout drawn on the screen, which is never evicted.
+	 *
+	 * @param info The layout or null.
+	 */
+	public void setRetained(ScreenInfo info)
+	{
+		retained = info;
+	}
+
+	/**
+	 * Evicts the least recently used layouts until the cached ones fit the given size.
+	 *
+	 * @param size The amount of bitmap bytes to be kept at most, the retained layout aside.
+	 */
+	public void trimToSize(long size)
+	{
+		Iterator<Map.Entry<Integer, ScreenInfo>> iterator = entries.entrySet().iterator();
+		while (byteCount > size && iterator.hasNext())
+		{
+			ScreenInfo info = iterator.next().getValue();
+			if (info != retained)
+			{
+				iterator.remove();
+				byteCount -= info.getByteCount();
+				evictionCount++;
+				recycle(info);
+			}
+		}
+	}
+
+	/**
+	 * Evicts all layouts but the retained one.
+	 */
+	public void evictAll()
+	{
+		// no amount of bytes fits a negative size, so even layouts without bitmaps are evicted
+		trimToSize(-1);
+	}
+
+	/**
+	 * Recycles all layouts including the retained one.
+	 */
+	public void clear()
+	{
+		retained = null;
+		evictAll();
+	}
+
+	/**
+	 * @return The budget of bitmap bytes.
+	 */
+	public long getMaxByteCount()
+	{
+		return maxByteCount;
+	}
+
+	/**
+	 * @return Amount of bitmap bytes of the cached layouts.
+	 */
+	public long getByteCount()
+	{
+		return byteCount;
+	}
+
+	/**
+	 * @return Amount of cached layouts.
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return Amount of lookups which found their layout.
+	 */
+	public int getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return Amount of lookups which didn't find their layout.
+	 */
+	public int getMissCount()
+	{
+		return missCount;
+	}
+
+	/**
+	 * @return Amount of evicted layouts.
+	 */
+	public int getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%d layouts of %d/%d kB, %d hits, %d misses, %d evictions", entries.size(),
+				byteCount / 1024, maxByteCount / 1024, hitCount, missCount, evictionCount);
+	}
+
+	/**
+	 * Recycles an evicted layout once the render thread is not drawing.
+	 *
+	 * @param info The layout.
+	 */
+	private void recycle(ScreenInfo info)
+	{
+		synchronized (drawLock)
+		{
+			info.recycle();
+		}
+	}
+}
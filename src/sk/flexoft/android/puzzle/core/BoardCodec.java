@@ -0,0 +1,118 @@
+package sk.flexoft.android.puzzle.core;
+
+/**
+ * @author Vladimir Iszer
+ * Packs board arrangements into compact byte arrays. Each field takes just enough bits
+ * to hold the puzzle index with the empty field stored as the last puzzle, so a 4x4
+ * board fits into 8 bytes and a 5x5 board into 16 bytes.
+ */
+public final class BoardCodec {
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private BoardCodec()
+	{
+	}
+
+	/**
+	 * Gets the amount of bits used by a single field.
+	 *
+	 * @param size The board size.
+	 * @return The bits per field.
+	 */
+	public static int getBitsPerField(int size)
+	{
+		return 32 - Integer.numberOfLeadingZeros(size * size - 1);
+	}
+
+	/**
+	 * Gets the amount of bytes of a packed board.
+	 *
+	 * @param size The board size.
+	 * @return The packed length.
+	 */
+	public static int getPackedLength(int size)
+	{
+		return (size * size * getBitsPerField(size) + 7) / 8;
+	}
+
+	/**
+	 * Packs the arrangement of a board.
+	 *
+	 * @param board The board.
+	 * @param buffer The target buffer.
+	 * @param offset The offset in the buffer.
+	 */
+	public static void pack(PuzzleBoard board, byte[] buffer, int offset)
+	{
+		int size = board.getSize();
+		int cellCount = size * size;
+		int bits = getBitsPerField(size);
+		int length = getPackedLength(size);
+
+		for (int i = 0; i < length; i++)
+		{
+			buffer[offset + i] = 0;
+		}
+
+		int bit = 0;
+		for (int cell = 0; cell < cellCount; cell++, bit += bits)
+		{
+			int puzzle = board.getPuzzleIndexAt(cell);
+			int value = puzzle == PuzzleBoard.EMPTY_FIELD_IDX ? cellCount - 1 : puzzle;
+			for (int b = 0; b < bits; b++)
+			{
+				if ((value & (1 << b)) != 0)
+				{
+					buffer[offset + ((bit + b) >>> 3)] |= 1 << ((bit + b) & 7);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores a packed arrangement into a board.
+	 *
+	 * @param buffer The source buffer.
+	 * @param offset The offset in the buffer.
+	 * @param board The board of the packed size to be updated.
+	 * @throws IllegalArgumentException Signals the data doesn't describe a solvable board.
+	 */
+	public static void unpack(byte[] buffer, int offset, PuzzleBoard board)
+	{
+		int size = board.getSize();
+		int[] puzzles = new int[size * size];
+		unpack(buffer, offset, size, puzzles);
+		board.setPuzzles(puzzles);
+	}
+
+	/**
+	 * Restores a packed arrangement without validating it.
+	 *
+	 * @param buffer The source buffer.
+	 * @param offset The offset in the buffer.
+	 * @param size The board size.
+	 * @param puzzles The puzzle index of each field to be filled.
+	 */
+	public static void unpack(byte[] buffer, int offset, int size, int[] puzzles)
+	{
+		int cellCount = size * size;
+		int bits = getBitsPerField(size);
+
+		int bit = 0;
+		for (int cell = 0; cell < cellCount; cell++, bit += bits)
+		{
+			int value = 0;
+			for (int b = 0; b < bits; b++)
+			{
+				if ((buffer[offset + ((bit + b) >>> 3)] & (1 << ((bit + b) & 7))) != 0)
+				{
+					value |= 1 << b;
+				}
+			}
+
+			puzzles[cell] = value == cellCount - 1 ? PuzzleBoard.EMPTY_FIELD_IDX : value;
+		}
+	}
+}
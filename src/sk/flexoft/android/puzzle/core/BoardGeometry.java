@@ -0,0 +1,272 @@
+package sk.flexoft.android.puzzle.core;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * @author Vladimir Iszer
+ * Precomputed tables describing the layout of a square board of a given size.
+ * Cells are addressed by a packed index <code>x * size + y</code>, the same way as
+ * the fields of a {@link PuzzleBoard}. Instances are immutable and shared per size.
+ * <p>
+ * The geometry also provides Zobrist keys of puzzles placed at cells. To keep the tables
+ * linear in the cell count even for large boards, the key of a puzzle at a cell mixes
+ * a random key of the cell with a random key of the puzzle instead of storing a key for
+ * every pair. The random keys are seeded by the board size, so hashes are stable across runs.
+ */
+public final class BoardGeometry {
+
+	/** Move of the empty field to the left. */
+	public static final int LEFT = 0;
+
+	/** Move of the empty field to the right. */
+	public static final int RIGHT = 1;
+
+	/** Move of the empty field up. */
+	public static final int UP = 2;
+
+	/** Move of the empty field down. */
+	public static final int DOWN = 3;
+
+	/** Amount of move directions. */
+	public static final int DIRECTIONS = 4;
+
+	/** Value of the neighbour table describing no neighbour in a direction. */
+	public static final int NO_CELL = -1;
+
+	/** The opposite directions indexed by direction. */
+	private static final int[] opposites = { RIGHT, LEFT, DOWN, UP };
+
+	/** The geometries created so far indexed by board size. */
+	private static final TreeMap<Integer, BoardGeometry> geometries = new TreeMap<Integer, BoardGeometry>();
+
+	/** The board size. */
+	private final int size;
+
+	/** Amount of cells on the board. */
+	private final int cellCount;
+
+	/** The horizontal index of each cell. */
+	private final int[] xs;
+
+	/** The vertical index of each cell. */
+	private final int[] ys;
+
+	/** The neighbour of each cell in each direction, stored at <code>cell * DIRECTIONS + direction</code>. */
+	private final int[] neighbours;
+
+	/** The random Zobrist key of each cell. */
+	private final long[] cellKeys;
+
+	/** The random Zobrist key of each puzzle. */
+	private final long[] puzzleKeys;
+
+	/** The Zobrist hash of the solved board. */
+	private final long solvedHash;
+
+	/**
+	 * Instantiates a new geometry.
+	 *
+	 * @param size The board size.
+	 */
+	private BoardGeometry(int size)
+	{
+		this.size = size;
+		cellCount = size * size;
+		xs = new int[cellCount];
+		ys = new int[cellCount];
+		neighbours = new int[cellCount * DIRECTIONS];
+
+		for (int cell = 0; cell < cellCount; cell++)
+		{
+			int x = cell / size;
+			int y = cell % size;
+			xs[cell] = x;
+			ys[cell] = y;
+
+			int base = cell * DIRECTIONS;
+			neighbours[base + LEFT] = x > 0 ? cell - size : NO_CELL;
+			neighbours[base + RIGHT] = x < size - 1 ? cell + size : NO_CELL;
+			neighbours[base + UP] = y > 0 ? cell - 1 : NO_CELL;
+			neighbours[base + DOWN] = y < size - 1 ? cell + 1 : NO_CELL;
+		}
+
+		Random random = new Random(size * 0x9E3779B97F4A7C15L);
+		cellKeys = new long[cellCount];
+		puzzleKeys = new long[cellCount - 1];
+		for (int cell = 0; cell < cellCount; cell++)
+		{
+			cellKeys[cell] = random.nextLong();
+		}
+
+		long hash = 0;
+		for (int puzzle = 0; puzzle < puzzleKeys.length; puzzle++)
+		{
+			puzzleKeys[puzzle] = random.nextLong();
+			hash ^= getZobristKey(puzzle, puzzle);
+		}
+
+		solvedHash = hash;
+	}
+
+	/**
+	 * Returns the geometry for a board size.
+	 *
+	 * @param size The board size.
+	 * @return The shared geometry instance.
+	 */
+	public static synchronized BoardGeometry get(int size)
+	{
+		if (size < 2)
+		{
+			throw new IllegalArgumentException("size");
+		}
+
+		BoardGeometry geometry = geometries.get(size);
+		if (geometry == null)
+		{
+			geometry = new BoardGeometry(size);
+			geometries.put(size, geometry);
+		}
+
+		return geometry;
+	}
+
+	/**
+	 * Returns the direction reverting the given one.
+	 *
+	 * @param direction The direction.
+	 * @return The opposite direction.
+	 */
+	public static int opposite(int direction)
+	{
+		return opposites[direction];
+	}
+
+	/**
+	 * @return The board size.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Amount of cells on the board.
+	 */
+	public int getCellCount()
+	{
+		return cellCount;
+	}
+
+	/**
+	 * @param cell The packed cell index.
+	 * @return The horizontal index of the cell.
+	 */
+	public int getX(int cell)
+	{
+		return xs[cell];
+	}
+
+	/**
+	 * @param cell The packed cell index.
+	 * @return The vertical index of the cell.
+	 */
+	public int getY(int cell)
+	{
+		return ys[cell];
+	}
+
+	/**
+	 * Gets the Manhattan distance between two cells.
+	 *
+	 * @param a The first packed cell index.
+	 * @param b The second packed cell index.
+	 * @return The amount of single steps needed to get from one cell to another.
+	 */
+	public int getDistance(int a, int b)
+	{
+		return Math.abs(xs[a] - xs[b]) + Math.abs(ys[a] - ys[b]);
+	}
+
+	/**
+	 * Gets the neighbour of a cell.
+	 *
+	 * @param cell The packed cell index.
+	 * @param direction The direction to look at.
+	 * @return The neighbouring cell or {@link #NO_CELL} if the cell is on the border.
+	 */
+	public int getNeighbour(int cell, int direction)
+	{
+		return neighbours[cell * DIRECTIONS + direction];
+	}
+
+	/**
+	 * Returns the shared neighbour table for tight loops. The table must not be modified.
+	 *
+	 * @return The neighbours stored at <code>cell * DIRECTIONS + direction</code>.
+	 */
+	public int[] getNeighbours()
+	{
+		return neighbours;
+	}
+
+	/**
+	 * Checks if two cells share an edge.
+	 *
+	 * @param a The first packed cell index.
+	 * @param b The second packed cell index.
+	 * @return true if the cells are neighbours; otherwise false
+	 */
+	public boolean areAdjacent(int a, int b)
+	{
+		int base = a * DIRECTIONS;
+		return (neighbours[base] == b) | (neighbours[base + 1] == b) | (neighbours[base + 2] == b) | (neighbours[base + 3] == b);
+	}
+
+	/**
+	 * Gets the direction the empty field has to move in to get from one cell to its neighbour.
+	 *
+	 * @param from The cell of the empty field.
+	 * @param to The neighbouring cell.
+	 * @return The direction or {@link #NO_CELL} if the cells are not neighbours.
+	 */
+	public int getDirection(int from, int to)
+	{
+		int base = from * DIRECTIONS;
+		for (int direction = 0; direction < DIRECTIONS; direction++)
+		{
+			if (neighbours[base + direction] == to)
+			{
+				return direction;
+			}
+		}
+
+		return NO_CELL;
+	}
+
+	/**
+	 * Gets the Zobrist key of a puzzle placed at a cell. The hash of a board is the XOR
+	 * of the keys of all its puzzles; the empty field follows from them.
+	 *
+	 * @param cell The packed cell index.
+	 * @param puzzle The puzzle index.
+	 * @return The key.
+	 */
+	public long getZobristKey(int cell, int puzzle)
+	{
+		// 64-bit finalizer of MurmurHash3 spreads the combined keys over all bits
+		long key = cellKeys[cell] + puzzleKeys[puzzle];
+		key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+		key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return key ^ (key >>> 33);
+	}
+
+	/**
+	 * @return The Zobrist hash of the solved board.
+	 */
+	public long getSolvedHash()
+	{
+		return solvedHash;
+	}
+}
@@ -0,0 +1,64 @@
+package sk.flexoft.android.puzzle.core;
+
+/**
+ * @author Vladimir Iszer
+ * Defines difficulty of a shuffled board independently of the user interface.
+ */
+public enum Difficulty {
+
+	/** Easy game. */
+	Easy(3, 10, 14),
+
+	/** Medium game. */
+	Medium(5, 20, 25),
+
+	/** Hard game. */
+	Hard(7, 30, 40);
+
+	/** The square root of the amount of random moves used to shuffle the board. */
+	private final int shuffleMoves;
+
+	/** The minimal length of the shortest solution of a generated board. */
+	private final int minSolutionLength;
+
+	/** The maximal length of the shortest solution of a generated board. */
+	private final int maxSolutionLength;
+
+	/**
+	 * Instantiates a new difficulty.
+	 *
+	 * @param shuffleMoves The square root of the amount of random moves used to shuffle the board.
+	 * @param minSolutionLength The minimal length of the shortest solution of a generated board.
+	 * @param maxSolutionLength The maximal length of the shortest solution of a generated board.
+	 */
+	private Difficulty(int shuffleMoves, int minSolutionLength, int maxSolutionLength)
+	{
+		this.shuffleMoves = shuffleMoves;
+		this.minSolutionLength = minSolutionLength;
+		this.maxSolutionLength = maxSolutionLength;
+	}
+
+	/**
+	 * @return The amount of random moves used to shuffle the board.
+	 */
+	public int getShuffleMoves()
+	{
+		return shuffleMoves * shuffleMoves;
+	}
+
+	/**
+	 * @return The minimal length of the shortest solution of a generated board.
+	 */
+	public int getMinSolutionLength()
+	{
+		return minSolutionLength;
+	}
+
+	/**
+	 * @return The maximal length of the shortest solution of a generated board.
+	 */
+	public int getMaxSolutionLength()
+	{
+		return maxSolutionLength;
+	}
+}
@@ -0,0 +1,294 @@
+package sk.flexoft.android.puzzle.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author Vladimir Iszer
+ * Records the moves of a game for undo, redo and rewinding. Every move is stored as
+ * the 2-bit direction of the empty field, so a single long holds 32 moves. The arrangement
+ * of the board is packed by {@link BoardCodec} at the start of the game and after every
+ * {@link #CHECKPOINT_INTERVAL} moves, so rewinding to any move replays just a few moves.
+ * <p>
+ * The journal is maintained by its {@link PuzzleBoard}, which is the only one to change it.
+ */
+public final class MoveJournal {
+
+	/** Amount of moves between two board checkpoints. */
+	public static final int CHECKPOINT_INTERVAL = 256;
+
+	/** Amount of moves stored in a single word. */
+	private static final int MOVES_PER_WORD = 32;
+
+	/** Initial amount of words. */
+	private static final int INITIAL_WORDS = 4;
+
+	/** The board size. */
+	private final int size;
+
+	/** The packed board checkpoints, the k-th one taken after k * {@link #CHECKPOINT_INTERVAL} moves. */
+	private final ArrayList<byte[]> checkpoints = new ArrayList<byte[]>();
+
+	/** The moves packed by two bits. */
+	private long[] words = new long[INITIAL_WORDS];
+
+	/** Amount of recorded moves including undone ones. */
+	private int length;
+
+	/** Amount of moves applied to the board, the rest can be redone. */
+	private int position;
+
+	/**
+	 * Instantiates a new journal.
+	 *
+	 * @param size The board size.
+	 */
+	MoveJournal(int size)
+	{
+		this.size = size;
+	}
+
+	/**
+	 * Starts a new game, forgetting all moves.
+	 *
+	 * @param board The board with the initial arrangement.
+	 */
+	void start(PuzzleBoard board)
+	{
+		checkpoints.clear();
+		checkpoints.add(pack(board));
+		length = 0;
+		position = 0;
+		if (words.length > INITIAL_WORDS)
+		{
+			words = new long[INITIAL_WORDS];
+		}
+	}
+
+	/**
+	 * Records a move made on the board. Undone moves can't be redone afterwards.
+	 *
+	 * @param direction The direction of the empty field move.
+	 * @param board The board after the move.
+	 */
+	void record(int direction, PuzzleBoard board)
+	{
+		truncate();
+
+		int word = position / MOVES_PER_WORD;
+		if (word == words.length)
+		{
+			words = Arrays.copyOf(words, words.length * 2);
+		}
+
+		int shift = (position % MOVES_PER_WORD) * 2;
+		words[word] = (words[word] & ~(3L << shift)) | ((long)direction << shift);
+		length = ++position;
+
+		if (position % CHECKPOINT_INTERVAL == 0)
+		{
+			checkpoints.add(pack(board));
+		}
+	}
+
+	/**
+	 * Steps back by one move.
+	 *
+	 * @return The direction of the undone move.
+	 */
+	int undo()
+	{
+		if (position == 0)
+		{
+			throw new IllegalStateException("Nothing to undo.");
+		}
+
+		return getMove(--position);
+	}
+
+	/**
+	 * Steps forward by one undone move.
+	 *
+	 * @return The direction of the redone move.
+	 */
+	int redo()
+	{
+		if (position == length)
+		{
+			throw new IllegalStateException("Nothing to redo.");
+		}
+
+		return getMove(position++);
+	}
+
+	/**
+	 * Moves the current position, e.g. after rewinding the board.
+	 *
+	 * @param position The amount of moves applied to the board.
+	 */
+	void setPosition(int position)
+	{
+		this.position = position;
+	}
+
+	/**
+	 * Gets the last checkpoint taken before a move.
+	 *
+	 * @param move The index of the move.
+	 * @return The packed arrangement after the first <code>move / CHECKPOINT_INTERVAL * CHECKPOINT_INTERVAL</code> moves.
+	 */
+	byte[] getCheckpoint(int move)
+	{
+		return checkpoints.get(move / CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @return true if there is a move to be undone; otherwise false
+	 */
+	public boolean canUndo()
+	{
+		return position > 0;
+	}
+
+	/**
+	 * @return true if there is an undone move to be redone; otherwise false
+	 */
+	public boolean canRedo()
+	{
+		return position < length;
+	}
+
+	/**
+	 * @return Amount of recorded moves including undone ones.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return Amount of moves applied to the board.
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * Gets a recorded move.
+	 *
+	 * @param index The index of the move.
+	 * @return The direction of the empty field move as one of the {@link BoardGeometry} directions.
+	 */
+	public int getMove(int index)
+	{
+		if (index < 0 || index >= length)
+		{
+			throw new IllegalArgumentException("index");
+		}
+
+		return (int)(words[index / MOVES_PER_WORD] >>> ((index % MOVES_PER_WORD) * 2)) & 3;
+	}
+
+	/**
+	 * @return Amount of bytes occupied by the moves and checkpoints.
+	 */
+	public long getByteSize()
+	{
+		return words.length * 8L + checkpoints.size() * (long)BoardCodec.getPackedLength(size);
+	}
+
+	/**
+	 * Writes the moves and checkpoints.
+	 *
+	 * @param out The output.
+	 * @throws IOException Signals the journal couldn't be written.
+	 */
+	void write(DataOutput out) throws IOException
+	{
+		out.writeInt(length);
+		out.writeInt(position);
+		for (int i = 0, count = (length + MOVES_PER_WORD - 1) / MOVES_PER_WORD; i < count; i++)
+		{
+			out.writeLong(words[i]);
+		}
+
+		out.writeInt(checkpoints.size());
+		for (int i = 0; i < checkpoints.size(); i++)
+		{
+			out.write(checkpoints.get(i));
+		}
+	}
+
+	/**
+	 * Replaces the journal by one written by {@link #write(DataOutput)}.
+	 *
+	 * @param in The input.
+	 * @throws IOException Signals the journal couldn't be read or is corrupted.
+	 */
+	void read(DataInput in) throws IOException
+	{
+		int newLength = in.readInt();
+		int newPosition = in.readInt();
+		if (newLength < 0 || newPosition < 0 || newPosition > newLength)
+		{
+			throw new IOException("Corrupted move journal.");
+		}
+
+		int count = (newLength + MOVES_PER_WORD - 1) / MOVES_PER_WORD;
+		long[] newWords = new long[Math.max(INITIAL_WORDS, Integer.highestOneBit(Math.max(count, 1)) * 2)];
+		for (int i = 0; i < count; i++)
+		{
+			newWords[i] = in.readLong();
+		}
+
+		int checkpointCount = in.readInt();
+		if (checkpointCount != newLength / CHECKPOINT_INTERVAL + 1)
+		{
+			throw new IOException("Corrupted move journal.");
+		}
+
+		int packedLength = BoardCodec.getPackedLength(size);
+		ArrayList<byte[]> newCheckpoints = new ArrayList<byte[]>(checkpointCount);
+		for (int i = 0; i < checkpointCount; i++)
+		{
+			byte[] packed = new byte[packedLength];
+			in.readFully(packed);
+			newCheckpoints.add(packed);
+		}
+
+		words = newWords;
+		checkpoints.clear();
+		checkpoints.addAll(newCheckpoints);
+		length = newLength;
+		position = newPosition;
+	}
+
+	/**
+	 * Forgets the undone moves and their checkpoints.
+	 */
+	private void truncate()
+	{
+		length = position;
+		for (int last = checkpoints.size() - 1; last * CHECKPOINT_INTERVAL > position; last--)
+		{
+			checkpoints.remove(last);
+		}
+	}
+
+	/**
+	 * Packs the arrangement of a board.
+	 *
+	 * @param board The board.
+	 * @return The packed arrangement.
+	 */
+	private byte[] pack(PuzzleBoard board)
+	{
+		byte[] packed = new byte[BoardCodec.getPackedLength(size)];
+		BoardCodec.pack(board, packed, 0);
+		return packed;
+	}
+}
@@ -0,0 +1,826 @@
+package sk.flexoft.android.puzzle.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * @author Vladimir Iszer
+ * Represents a board for a game. The class doesn't depend on Android so the game logic
+ * can be used and measured on a plain JVM as well.
+ */
+/**
+ * @author izi
+ *
+ */
+public class PuzzleBoard {
+
+	/** Constant describing empty field index. */
+	public static final int EMPTY_FIELD_IDX = -1;
+
+    /** Random number generator. */
+    private static final Random rand = new Random();
+
+	/** The listeners notified about the board state. */
+	private final ArrayList<PuzzleBoardListener> listeners = new ArrayList<PuzzleBoardListener>();
+
+	/** The precomputed layout tables of the board. */
+	private final BoardGeometry geometry;
+
+	/** The neighbour table of the geometry. */
+	private final int[] neighbours;
+
+	/** The main game board keeping location of puzzles indexed by packed field index. */
+	private final int[] cells;
+
+	/** Scratch marks used when decomposing the board permutation into cycles. */
+	private final boolean[] visited;
+
+	/** The moves of the current game. */
+	private final MoveJournal journal;
+
+	/** The size of the board side. */
+	private final int size;
+
+	/** The packed index of the empty field. */
+	private int emptyCell;
+
+	/** Amount of puzzles not located at their original position. */
+	private int misplacedCount;
+
+	/** Sum of distances of all puzzles from their original positions. */
+	private int manhattanDistance;
+
+	/** The Zobrist hash of the current arrangement. */
+	private long hash;
+
+	/** Indicates the user finished the game */
+	private boolean hasFinished = true;
+
+	/**
+	 * Instantiates a new puzzle board.
+	 *
+	 * @param size The required size of the board
+	 */
+	public PuzzleBoard(int size)
+	{
+		if (size < 2)
+		{
+			throw new IllegalArgumentException("size");
+		}
+
+		this.size = size;
+		geometry = BoardGeometry.get(size);
+		neighbours = geometry.getNeighbours();
+		cells = new int[geometry.getCellCount()];
+		visited = new boolean[cells.length];
+		journal = new MoveJournal(size);
+		reset();
+		journal.start(this);
+	}
+
+	/**
+	 * Registers a listener notified about the board state.
+	 *
+	 * @param listener The listener to be added.
+	 */
+	public void addListener(PuzzleBoardListener listener)
+	{
+		if (listener == null)
+		{
+			throw new IllegalArgumentException("listener");
+		}
+
+		if (!listeners.contains(listener))
+		{
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Unregisters a previously added listener.
+	 *
+	 * @param listener The listener to be removed.
+	 */
+	public void removeListener(PuzzleBoardListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Shuffles the board by a random walk of the empty field.
+	 *
+	 * @param difficulty The difficulty of the new game.
+	 */
+	public void shuffle(Difficulty difficulty)
+	{
+		shuffle(difficulty, rand);
+	}
+
+	/**
+	 * Shuffles the board by a random walk of the empty field.
+	 *
+	 * @param difficulty The difficulty of the new game.
+	 * @param random The random number generator to be used.
+	 */
+	public void shuffle(Difficulty difficulty, Random random)
+	{
+		if (difficulty == null)
+		{
+			throw new IllegalArgumentException("difficulty");
+		}
+
+		shuffle(difficulty.getShuffleMoves(), random);
+	}
+
+	/**
+	 * Shuffles the board by a random walk of the empty field which never reverts the previous step.
+	 * The shortest solution of the resulting board is never longer than the walk.
+	 *
+	 * @param moves The amount of steps of the walk.
+	 * @param random The random number generator to be used.
+	 */
+	public void shuffle(int moves, Random random)
+	{
+		if (moves < 0)
+		{
+			throw new IllegalArgumentException("moves");
+		}
+
+		if (random == null)
+		{
+			throw new IllegalArgumentException("random");
+		}
+
+		reset();
+
+		int lastOperation = -1;
+        for (int i = 0; i < moves; i++)
+        {
+        	int base = emptyCell * BoardGeometry.DIRECTIONS;
+        	int next;
+            while (true)
+            {
+                int operation = random.nextInt(BoardGeometry.DIRECTIONS);
+                next = neighbours[base + operation];
+
+                // is the operation allowed and not reverting previous one ?
+                if (next != BoardGeometry.NO_CELL && (lastOperation == -1 || operation != BoardGeometry.opposite(lastOperation)))
+                {
+                    lastOperation = operation;
+                    break;
+                }
+            }
+
+            // move the empty field according last operation
+            moveToEmptyCell(next);
+        }
+
+        hasFinished = false;
+        startGame();
+	}
+
+	/**
+	 * Shuffles the board to a uniformly random solvable arrangement. Unlike the random walk
+	 * the result doesn't stay close to the solved board, whatever the board size.
+	 */
+	public void shuffleUniform()
+	{
+		shuffleUniform(rand);
+	}
+
+	/**
+	 * Shuffles the board to a uniformly random solvable arrangement. Unlike the random walk
+	 * the result doesn't stay close to the solved board, whatever the board size.
+	 *
+	 * @param random The random number generator to be used.
+	 */
+	public void shuffleUniform(Random random)
+	{
+		if (random == null)
+		{
+			throw new IllegalArgumentException("random");
+		}
+
+		do
+		{
+			reset();
+
+			// Fisher-Yates shuffle of all fields including the empty one
+			for (int i = cells.length - 1; i > 0; i--)
+			{
+				int j = random.nextInt(i + 1);
+				int swap = cells[i];
+				cells[i] = cells[j];
+				cells[j] = swap;
+			}
+
+			for (int i = 0; i < cells.length; i++)
+			{
+				if (cells[i] == EMPTY_FIELD_IDX)
+				{
+					emptyCell = i;
+					break;
+				}
+			}
+
+			// exchanging two puzzles flips the parity and turns unsolvable arrangement into solvable one
+			if (!isSolvable())
+			{
+				int first = emptyCell == 0 ? 1 : 0;
+				int second = emptyCell <= 1 ? 2 : 1;
+				int swap = cells[first];
+				cells[first] = cells[second];
+				cells[second] = swap;
+			}
+
+			recount();
+		}
+		while (misplacedCount == 0);
+
+		hasFinished = false;
+		startGame();
+	}
+
+	/**
+	 * Checks if the current arrangement can be solved. The permutation of all fields with the
+	 * empty field taken as the last puzzle has to have the same parity as the distance of
+	 * the empty field from its original position.
+	 *
+	 * @return true if the board can be solved; otherwise false
+	 */
+	public boolean isSolvable()
+	{
+		int last = cells.length - 1;
+		int cycles = 0;
+		for (int i = 0; i < cells.length; i++)
+		{
+			if (visited[i])
+			{
+				continue;
+			}
+
+			cycles++;
+			for (int j = i; !visited[j]; )
+			{
+				visited[j] = true;
+				j = cells[j] == EMPTY_FIELD_IDX ? last : cells[j];
+			}
+		}
+
+		for (int i = 0; i < visited.length; i++)
+		{
+			visited[i] = false;
+		}
+
+		int permutationParity = (cells.length - cycles) & 1;
+		return permutationParity == (geometry.getDistance(emptyCell, last) & 1);
+	}
+
+	/**
+	 * @return Raster size of this board
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The precomputed layout tables of this board.
+	 */
+	public BoardGeometry getGeometry()
+	{
+		return geometry;
+	}
+
+	/**
+	 * @return The packed index of the empty field.
+	 */
+	public int getEmptyCell()
+	{
+		return emptyCell;
+	}
+
+	/**
+	 * @return Amount of puzzles which are not located at their original position.
+	 */
+	public int getMisplacedCount()
+	{
+		return misplacedCount;
+	}
+
+	/**
+	 * @return Sum of Manhattan distances of all puzzles from their original positions.
+	 */
+	public int getManhattanDistance()
+	{
+		return manhattanDistance;
+	}
+
+	/**
+	 * Gets the 64-bit Zobrist hash of the arrangement, maintained on every move.
+	 * Equal arrangements of boards of the same size have equal hashes.
+	 *
+	 * @return The hash.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * @return true if all puzzles are at their original positions; otherwise false
+	 */
+	public boolean isSolved()
+	{
+		return misplacedCount == 0;
+	}
+
+	/**
+	 * @return true if the user finished successfully the puzzle on this board; otherwise false
+	 */
+	public boolean isFinished()
+	{
+		return hasFinished;
+	}
+
+	/**
+	 * Gets the puzzle index at specified board position.
+	 *
+	 * @param x The horizontal board position
+	 * @param y The vertical board position
+	 * @return The puzzle index at given board position.
+	 */
+	public int getPuzzleIndexAt(int x, int y)
+	{
+		if (x >= size || y >= size || x < 0 || y < 0)
+		{
+			throw new IllegalArgumentException("x or y");
+		}
+
+		return cells[x * size + y];
+	}
+
+	/**
+	 * Gets the puzzle index at specified packed board position without range checking.
+	 *
+	 * @param index The packed field index.
+	 * @return The puzzle index at given board position.
+	 */
+	public int getPuzzleIndexAt(int index)
+	{
+		return cells[index];
+	}
+
+	/**
+	 * Copies the puzzle indexes of all fields.
+	 *
+	 * @param puzzles The array of the board field count to be filled.
+	 */
+	public void getPuzzles(int[] puzzles)
+	{
+		if (puzzles == null || puzzles.length != cells.length)
+		{
+			throw new IllegalArgumentException("puzzles");
+		}
+
+		System.arraycopy(cells, 0, puzzles, 0, cells.length);
+	}
+
+	/**
+	 * Replaces the whole arrangement of the board, e.g. when a game is loaded.
+	 *
+	 * @param puzzles The puzzle index of each field with exactly one {@link #EMPTY_FIELD_IDX}.
+	 * @throws IllegalArgumentException Signals the arrangement is not a solvable board of this size.
+	 */
+	public void setPuzzles(int[] puzzles)
+	{
+		load(puzzles);
+		hasFinished = misplacedCount == 0;
+		startGame();
+	}
+
+	/**
+	 * Writes the arrangement, the state of the game and the moves of the journal.
+	 *
+	 * @param out The output.
+	 * @throws IOException Signals the state couldn't be written.
+	 */
+	public void writeState(DataOutput out) throws IOException
+	{
+		byte[] packed = new byte[BoardCodec.getPackedLength(size)];
+		BoardCodec.pack(this, packed, 0);
+		out.writeInt(size);
+		out.write(packed);
+		out.writeBoolean(hasFinished);
+		journal.write(out);
+	}
+
+	/**
+	 * Restores the game written by {@link #writeState(DataOutput)} as it was, without replaying its moves.
+	 * The listeners are notified as after rewinding the board.
+	 *
+	 * @param in The input.
+	 * @throws IOException Signals the state couldn't be read or doesn't belong to a board of this size.
+	 */
+	public void readState(DataInput in) throws IOException
+	{
+		if (in.readInt() != size)
+		{
+			throw new IOException("The state belongs to a board of another size.");
+		}
+
+		byte[] packed = new byte[BoardCodec.getPackedLength(size)];
+		in.readFully(packed);
+		int[] puzzles = new int[cells.length];
+		BoardCodec.unpack(packed, 0, size, puzzles);
+		try
+		{
+			load(puzzles);
+		}
+		catch (IllegalArgumentException e)
+		{
+			journal.start(this);
+			throw new IOException("Corrupted board state.");
+		}
+
+		hasFinished = in.readBoolean();
+		try
+		{
+			journal.read(in);
+		}
+		catch (IOException e)
+		{
+			journal.start(this);
+			throw e;
+		}
+
+		for (int i = 0; i < listeners.size(); i++)
+		{
+			listeners.get(i).onBoardRestored(this);
+		}
+	}
+
+	/**
+	 * Replaces the whole arrangement of the board.
+	 *
+	 * @param puzzles The puzzle index of each field with exactly one {@link #EMPTY_FIELD_IDX}.
+	 * @throws IllegalArgumentException Signals the arrangement is not a solvable board of this size.
+	 */
+	private void load(int[] puzzles)
+	{
+		if (puzzles == null || puzzles.length != cells.length)
+		{
+			throw new IllegalArgumentException("puzzles");
+		}
+
+		// every puzzle and the empty field have to be present exactly once
+		boolean valid = true;
+		for (int i = 0; i < puzzles.length && valid; i++)
+		{
+			int puzzle = puzzles[i] == EMPTY_FIELD_IDX ? cells.length - 1 : puzzles[i];
+			valid = puzzle >= 0 && puzzle < cells.length && !visited[puzzle];
+			if (valid)
+			{
+				visited[puzzle] = true;
+			}
+		}
+
+		for (int i = 0; i < visited.length; i++)
+		{
+			visited[i] = false;
+		}
+
+		if (!valid)
+		{
+			throw new IllegalArgumentException("puzzles");
+		}
+
+		System.arraycopy(puzzles, 0, cells, 0, cells.length);
+		recount();
+
+		if (!isSolvable())
+		{
+			reset();
+			throw new IllegalArgumentException("puzzles");
+		}
+	}
+
+	/**
+	 * Checks if a field at a position is exchangeable, i.e. empty field is in next to it.
+	 *
+	 * @param index The packed field index.
+	 * @return true, if field is exchangeable; otherwise false
+	 */
+	public boolean isFieldExchangeable(int index) {
+		if (hasFinished || index < 0 || index >= cells.length)
+		{
+			return false;
+		}
+
+		return geometry.areAdjacent(index, emptyCell);
+	}
+
+
+	/**
+	 * Checks if a field at a position is exchangeable, i.e. empty field is in next to it.
+	 *
+	 * @param i The horizontal index.
+	 * @param j The vertical index.
+	 * @return true, if field is exchangeable; otherwise false
+	 */
+	public boolean isFieldExchangeable(int i, int j) {
+		if (i >= size || j >= size || i < 0 || j < 0)
+		{
+			return false;
+		}
+
+		return isFieldExchangeable(i * size + j);
+	}
+
+	/**
+	 * Performs the exchange of field at specified index and empty field.
+	 *
+	 * @param index The index
+	 */
+	public void exchange(int index) {
+		assert geometry.areAdjacent(index, emptyCell);
+
+		int direction = geometry.getDirection(emptyCell, index);
+		moveToEmptyCell(index);
+		journal.record(direction, this);
+		completeMoves(direction, 1);
+	}
+
+	/**
+	 * Checks if a field can be slid, i.e. it shares the row or column with the empty field.
+	 *
+	 * @param index The packed field index.
+	 * @return true, if the field is slidable; otherwise false
+	 */
+	public boolean isFieldSlidable(int index) {
+		if (hasFinished || index < 0 || index >= cells.length || index == emptyCell)
+		{
+			return false;
+		}
+
+		return geometry.getX(index) == geometry.getX(emptyCell) || geometry.getY(index) == geometry.getY(emptyCell);
+	}
+
+	/**
+	 * Slides all puzzles between a field and the empty field by one towards the empty field,
+	 * so the empty field gets to the given field. The puzzles are moved as a single batch:
+	 * the listeners are notified and the end of the game is checked just once.
+	 *
+	 * @param index The packed index of a field in the row or column of the empty field.
+	 */
+	public void slide(int index) {
+		if (index < 0 || index >= cells.length || index == emptyCell
+				|| (geometry.getX(index) != geometry.getX(emptyCell) && geometry.getY(index) != geometry.getY(emptyCell)))
+		{
+			throw new IllegalArgumentException("index");
+		}
+
+		int direction;
+		if (geometry.getX(index) == geometry.getX(emptyCell))
+		{
+			direction = geometry.getY(index) > geometry.getY(emptyCell) ? BoardGeometry.DOWN : BoardGeometry.UP;
+		}
+		else
+		{
+			direction = geometry.getX(index) > geometry.getX(emptyCell) ? BoardGeometry.RIGHT : BoardGeometry.LEFT;
+		}
+
+		int count = geometry.getDistance(emptyCell, index);
+		for (int i = 0; i < count; i++)
+		{
+			moveToEmptyCell(neighbours[emptyCell * BoardGeometry.DIRECTIONS + direction]);
+			journal.record(direction, this);
+		}
+
+		completeMoves(direction, count);
+	}
+
+	/**
+	 * @return The moves of the current game.
+	 */
+	public MoveJournal getJournal()
+	{
+		return journal;
+	}
+
+	/**
+	 * @return true if there is a move to be undone; otherwise false
+	 */
+	public boolean canUndo()
+	{
+		return journal.canUndo();
+	}
+
+	/**
+	 * @return true if there is an undone move to be redone; otherwise false
+	 */
+	public boolean canRedo()
+	{
+		return journal.canRedo();
+	}
+
+	/**
+	 * Takes back the last move. Undoing the winning move resumes the game.
+	 */
+	public void undo()
+	{
+		int direction = BoardGeometry.opposite(journal.undo());
+		moveToEmptyCell(neighbours[emptyCell * BoardGeometry.DIRECTIONS + direction]);
+		completeMoves(direction, 1);
+	}
+
+	/**
+	 * Makes the last undone move again.
+	 */
+	public void redo()
+	{
+		int direction = journal.redo();
+		moveToEmptyCell(neighbours[emptyCell * BoardGeometry.DIRECTIONS + direction]);
+		completeMoves(direction, 1);
+	}
+
+	/**
+	 * Brings the board to the state after a number of recorded moves, including undone ones.
+	 * The board is restored from the closest checkpoint and the rest of the moves is replayed.
+	 *
+	 * @param position The amount of recorded moves to be applied.
+	 */
+	public void rewind(int position)
+	{
+		if (position < 0 || position > journal.getLength())
+		{
+			throw new IllegalArgumentException("position");
+		}
+
+		if (position != journal.getPosition())
+		{
+			BoardCodec.unpack(journal.getCheckpoint(position), 0, size, cells);
+			recount();
+			for (int move = position - position % MoveJournal.CHECKPOINT_INTERVAL; move < position; move++)
+			{
+				moveToEmptyCell(neighbours[emptyCell * BoardGeometry.DIRECTIONS + journal.getMove(move)]);
+			}
+
+			journal.setPosition(position);
+			boolean finished = updateFinished();
+			for (int i = 0; i < listeners.size(); i++)
+			{
+				listeners.get(i).onBoardRestored(this);
+			}
+
+			if (finished)
+			{
+				notifyGameFinished();
+			}
+		}
+	}
+
+	/**
+	 * Moves a puzzle next to the empty field into it and updates the distance counters.
+	 *
+	 * @param index The packed index of the puzzle to be moved.
+	 */
+	private void moveToEmptyCell(int index)
+	{
+		int puzzle = cells[index];
+		int target = emptyCell;
+
+		// the puzzle leaves or reaches its original position
+		if (puzzle == index)
+		{
+			misplacedCount++;
+		}
+		else if (puzzle == target)
+		{
+			misplacedCount--;
+		}
+
+		manhattanDistance += geometry.getDistance(puzzle, target) - geometry.getDistance(puzzle, index);
+		hash ^= geometry.getZobristKey(index, puzzle) ^ geometry.getZobristKey(target, puzzle);
+
+		cells[target] = puzzle;
+		cells[index] = EMPTY_FIELD_IDX;
+		emptyCell = index;
+	}
+
+	/**
+	 * Puts all the puzzles to their original location.
+	 */
+	private void reset()
+	{
+		int last = cells.length - 1;
+		for (int i = 0; i < last; i++)
+		{
+			cells[i] = i;
+		}
+
+		cells[last] = EMPTY_FIELD_IDX;
+		emptyCell = last;
+		misplacedCount = 0;
+		manhattanDistance = 0;
+		hash = geometry.getSolvedHash();
+	}
+
+	/**
+	 * Recomputes the empty field position, the distance counters and the hash from the puzzle locations.
+	 */
+	private void recount()
+	{
+		misplacedCount = 0;
+		manhattanDistance = 0;
+		hash = 0;
+		for (int i = 0; i < cells.length; i++)
+		{
+			int puzzle = cells[i];
+			if (puzzle == EMPTY_FIELD_IDX)
+			{
+				emptyCell = i;
+				continue;
+			}
+
+			hash ^= geometry.getZobristKey(i, puzzle);
+			if (puzzle != i)
+			{
+				misplacedCount++;
+				manhattanDistance += geometry.getDistance(puzzle, i);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the moves of the previous game and notifies the listeners about the new one.
+	 */
+	private void startGame()
+	{
+		journal.start(this);
+		for (int i = 0; i < listeners.size(); i++)
+		{
+			listeners.get(i).onGameStarted(this);
+		}
+	}
+
+	/**
+	 * Updates the state of the game after moves of the empty field and notifies the listeners.
+	 * The state is final before any listener is notified, so a listener, e.g. a renderer,
+	 * always sees the finished flag matching the arrangement.
+	 *
+	 * @param direction The direction of the moves.
+	 * @param count Amount of moves.
+	 */
+	private void completeMoves(int direction, int count)
+	{
+		boolean finished = updateFinished();
+		for (int i = 0; i < listeners.size(); i++)
+		{
+			listeners.get(i).onEmptyFieldMoved(this, direction, count);
+		}
+
+		if (finished)
+		{
+			notifyGameFinished();
+		}
+	}
+
+	/**
+	 * Checks if the state of the board means successful finish of the puzzle.
+	 *
+	 * @return true if the puzzle has just been finished and the listeners have to be notified; otherwise false
+	 */
+	private boolean updateFinished()
+	{
+		if (misplacedCount != 0)
+		{
+			// moving away from the solved state by undo resumes the game
+			hasFinished = false;
+			return false;
+		}
+
+		if (hasFinished)
+		{
+			return false;
+		}
+
+		// the game is over
+		hasFinished = true;
+		return true;
+	}
+
+	/**
+	 * Notifies the listeners about the successful finish of the puzzle.
+	 */
+	private void notifyGameFinished()
+	{
+		for (int i = 0; i < listeners.size(); i++)
+		{
+			listeners.get(i).onGameFinished(this);
+		}
+	}
+}
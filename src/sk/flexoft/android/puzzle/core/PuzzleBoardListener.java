@@ -0,0 +1,38 @@
+package sk.flexoft.android.puzzle.core;
+
+/**
+ * @author Vladimir Iszer
+ * Receives notifications about the state of a {@link PuzzleBoard}.
+ */
+public interface PuzzleBoardListener {
+
+	/**
+	 * Called when a new game has been set up on the board by shuffling or by setting the puzzles.
+	 *
+	 * @param board The board with the initial arrangement.
+	 */
+	void onGameStarted(PuzzleBoard board);
+
+	/**
+	 * Called after the empty field has moved by an exchange, a slide, undo or redo.
+	 *
+	 * @param board The board after the moves.
+	 * @param direction The direction of the empty field moves as one of the {@link BoardGeometry} directions.
+	 * @param count Amount of moves in the direction, more than one after a slide.
+	 */
+	void onEmptyFieldMoved(PuzzleBoard board, int direction, int count);
+
+	/**
+	 * Called when the board has been rewound to an earlier or later arrangement of the same game.
+	 *
+	 * @param board The board after rewinding.
+	 */
+	void onBoardRestored(PuzzleBoard board);
+
+	/**
+	 * Called when the last move solved the puzzle on the board.
+	 *
+	 * @param board The board which has been solved.
+	 */
+	void onGameFinished(PuzzleBoard board);
+}
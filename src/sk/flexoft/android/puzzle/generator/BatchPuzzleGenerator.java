@@ -0,0 +1,344 @@
+package sk.flexoft.android.puzzle.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sk.flexoft.android.puzzle.core.BoardCodec;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Generates packs of distinct boards on all processor cores, e.g. daily challenges or level lists.
+ * Every worker owns its board, generator and random stream, so the workers share only the set of
+ * Zobrist hashes used to drop duplicates and the output stream, which receives whole chunks of boards.
+ * <p>
+ * The pack format (big endian) is the magic, board size, board count, minimal and maximal solution
+ * length (both 0 for uniformly random boards) followed by the boards packed by {@link BoardCodec}.
+ * <p>
+ * Usage: <code>BatchPuzzleGenerator size count output [minLength maxLength [threads [seed]]]</code>
+ */
+public class BatchPuzzleGenerator {
+
+	/** The file magic "PZP1". */
+	static final int MAGIC = 0x505A5031;
+
+	/** Amount of boards a worker collects before writing them out. */
+	private static final int CHUNK_BOARDS = 4096;
+
+	/** Amount of successive duplicates after which a worker considers the range exhausted. */
+	private static final int MAX_SUCCESSIVE_DUPLICATES = 100000;
+
+	/** The least amount of successive failed generations after which the range is considered infeasible. */
+	private static final int MIN_SUCCESSIVE_FAILURES = 256;
+
+	/** Amount of boards of a pack per allowed successive failed generation beyond the least amount. */
+	private static final int BOARDS_PER_FAILURE = 16;
+
+	/** The board size. */
+	private final int size;
+
+	/** The minimal solution length or 0 for uniformly random boards. */
+	private final int minLength;
+
+	/** The maximal solution length or 0 for uniformly random boards. */
+	private final int maxLength;
+
+	/** Amount of worker threads. */
+	private final int threads;
+
+	/** The seed of the worker random streams. */
+	private final long seed;
+
+	/** Amount of generated boards dropped as duplicates by the last run. */
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/**
+	 * Instantiates a new generator.
+	 *
+	 * @param size The board size.
+	 * @param minLength The minimal solution length or 0 for uniformly random boards.
+	 * @param maxLength The maximal solution length or 0 for uniformly random boards.
+	 * @param threads Amount of worker threads.
+	 * @param seed The seed of the worker random streams.
+	 */
+	public BatchPuzzleGenerator(int size, int minLength, int maxLength, int threads, long seed)
+	{
+		if (size < 2)
+		{
+			throw new IllegalArgumentException("size");
+		}
+
+		if (minLength < 0 || maxLength < minLength || (minLength == 0) != (maxLength == 0))
+		{
+			throw new IllegalArgumentException("minLength or maxLength");
+		}
+
+		// no board of the size has a longer shortest solution, so such a range is a mistake
+		if (maxLength > PuzzleGenerator.getMaxSolutionLength(size))
+		{
+			throw new IllegalArgumentException("maxLength");
+		}
+
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("threads");
+		}
+
+		this.size = size;
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	/**
+	 * Generates distinct boards and writes them as a pack.
+	 *
+	 * @param count Amount of boards.
+	 * @param output The stream receiving the pack; it is not closed.
+	 * @throws IOException Signals the pack couldn't be written.
+	 * @throws InterruptedException Signals the calling thread has been interrupted.
+	 * @throws IllegalStateException Signals the solution length range doesn't hold enough distinct boards
+	 * or the generator fails to meet it too many times in a row.
+	 */
+	public void generate(final int count, OutputStream output) throws IOException, InterruptedException
+	{
+		if (count < 0)
+		{
+			throw new IllegalArgumentException("count");
+		}
+
+		final DataOutputStream out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeInt(size);
+		out.writeInt(count);
+		out.writeInt(minLength);
+		out.writeInt(maxLength);
+
+		final Set<Long> hashes = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>(count + count / 2, 0.75f, threads));
+		final AtomicInteger claimed = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final int maxFailures = Math.max(MIN_SUCCESSIVE_FAILURES, count / BOARDS_PER_FAILURE);
+		duplicates.set(0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+			for (int worker = 0; worker < threads; worker++)
+			{
+				final Random random = new Random(seed + worker * 0x9E3779B97F4A7C15L);
+				workers.add(executor.submit(new Callable<Void>() {
+
+					/* (non-Javadoc)
+					 * @see java.util.concurrent.Callable#call()
+					 */
+					@Override
+					public Void call() throws IOException {
+						try
+						{
+							generate(count, random, hashes, claimed, failures, maxFailures, aborted, out);
+						}
+						catch (IOException e)
+						{
+							aborted.set(true);
+							throw e;
+						}
+						catch (RuntimeException e)
+						{
+							// the other workers would keep going while the calling thread waits for them
+							aborted.set(true);
+							throw e;
+						}
+
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> worker : workers)
+			{
+				try
+				{
+					worker.get();
+				}
+				catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof IOException)
+					{
+						throw (IOException)e.getCause();
+					}
+
+					if (e.getCause() instanceof RuntimeException)
+					{
+						throw (RuntimeException)e.getCause();
+					}
+
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * @return Amount of generated boards dropped as duplicates by the last run.
+	 */
+	public long getDuplicates()
+	{
+		return duplicates.get();
+	}
+
+	/**
+	 * The work of a single worker thread.
+	 *
+	 * @param count Amount of boards of the whole pack.
+	 * @param random The random stream of the worker.
+	 * @param hashes The hashes of boards generated so far.
+	 * @param claimed Amount of pack slots claimed so far.
+	 * @param failures Amount of successive failed generations of all workers.
+	 * @param maxFailures Amount of successive failed generations after which the range is considered infeasible.
+	 * @param aborted Indicates a worker has failed and the others have to stop.
+	 * @param out The pack output shared by workers.
+	 * @throws IOException Signals the boards couldn't be written.
+	 */
+	private void generate(int count, Random random, Set<Long> hashes, AtomicInteger claimed, AtomicInteger failures,
+			int maxFailures, AtomicBoolean aborted, DataOutputStream out) throws IOException
+	{
+		PuzzleBoard board = new PuzzleBoard(size);
+		PuzzleGenerator generator = minLength > 0 ? new PuzzleGenerator(random) : null;
+		int packedLength = BoardCodec.getPackedLength(size);
+		byte[] chunk = new byte[CHUNK_BOARDS * packedLength];
+		int chunkBoards = 0;
+		int successiveDuplicates = 0;
+
+		while (claimed.get() < count && !aborted.get() && !Thread.currentThread().isInterrupted())
+		{
+			if (generator != null)
+			{
+				if (!generator.generate(board, minLength, maxLength))
+				{
+					if (failures.incrementAndGet() >= maxFailures)
+					{
+						throw new IllegalStateException("The solution length range can't be met.");
+					}
+
+					continue;
+				}
+
+				failures.set(0);
+			}
+			else
+			{
+				board.shuffleUniform(random);
+			}
+
+			if (!hashes.add(board.getHash()))
+			{
+				duplicates.incrementAndGet();
+				if (++successiveDuplicates == MAX_SUCCESSIVE_DUPLICATES)
+				{
+					throw new IllegalStateException("Not enough distinct boards in the solution length range.");
+				}
+
+				continue;
+			}
+
+			successiveDuplicates = 0;
+			BoardCodec.pack(board, chunk, chunkBoards * packedLength);
+
+			if (claimed.getAndIncrement() >= count)
+			{
+				break;
+			}
+
+			if (++chunkBoards == CHUNK_BOARDS)
+			{
+				write(out, chunk, chunkBoards * packedLength);
+				chunkBoards = 0;
+			}
+		}
+
+		write(out, chunk, chunkBoards * packedLength);
+	}
+
+	/**
+	 * Writes a chunk of boards to the shared output.
+	 *
+	 * @param out The shared output.
+	 * @param chunk The packed boards.
+	 * @param length The length of the packed boards.
+	 * @throws IOException Signals the boards couldn't be written.
+	 */
+	private static void write(DataOutputStream out, byte[] chunk, int length) throws IOException
+	{
+		if (length > 0)
+		{
+			synchronized (out)
+			{
+				out.write(chunk, 0, length);
+			}
+		}
+	}
+
+	/**
+	 * Command line entry point.
+	 *
+	 * @param args The board size, board count, output file and optionally the solution length range, threads and seed.
+	 * @throws Exception Signals the pack couldn't be generated.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 3 && args.length < 5)
+		{
+			System.err.println("Usage: BatchPuzzleGenerator size count output [minLength maxLength [threads [seed]]]");
+			System.exit(1);
+		}
+
+		int size = Integer.parseInt(args[0]);
+		int count = Integer.parseInt(args[1]);
+		int minLength = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		int maxLength = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 6 ? Long.parseLong(args[6]) : System.nanoTime();
+
+		BatchPuzzleGenerator generator = new BatchPuzzleGenerator(size, minLength, maxLength, threads, seed);
+		long start = System.currentTimeMillis();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]), 1 << 16);
+		try
+		{
+			generator.generate(count, out);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.printf("%d boards (%d duplicates dropped) written to %s in %d ms, %d boards per minute.%n",
+				count, generator.getDuplicates(), args[2], elapsed, count * 60000L / elapsed);
+	}
+}
@@ -0,0 +1,187 @@
+package sk.flexoft.android.puzzle.generator;
+
+import java.util.Random;
+
+import sk.flexoft.android.puzzle.core.Difficulty;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+import sk.flexoft.android.puzzle.solver.Heuristic;
+import sk.flexoft.android.puzzle.solver.IdaStarSolver;
+import sk.flexoft.android.puzzle.solver.LinearConflictHeuristic;
+import sk.flexoft.android.puzzle.solver.SearchState;
+import sk.flexoft.android.puzzle.solver.SolverResult;
+
+/**
+ * @author Vladimir Iszer
+ * Generates boards whose shortest solution length falls into a requested range.
+ * A candidate is made by a non-reverting random walk as long as the upper limit or one
+ * step shorter, so its solution is never longer than the limit. Every step changes the
+ * parity of the solution length, so a walk of a fixed length would never yield a solution
+ * of the other parity. If a lower bound of the heuristic already reaches the lower limit
+ * the candidate is accepted without any search; otherwise the exact length is computed
+ * by a node limited {@link IdaStarSolver}.
+ * An instance is meant to be used by a single thread.
+ */
+public class PuzzleGenerator {
+
+	/** The default amount of candidates tried before giving up. */
+	public static final int DEFAULT_ATTEMPTS = 64;
+
+	/** The default amount of nodes a single exact check may expand. */
+	public static final long DEFAULT_NODE_LIMIT = 50000;
+
+	/**
+	 * The longest shortest solutions of boards by size starting at 2: exact for sizes up to 4,
+	 * the best known upper bound for size 5.
+	 */
+	private static final int[] MAX_SOLUTION_LENGTHS = { 6, 31, 80, 205 };
+
+	/** The random number generator. */
+	private final Random random;
+
+	/** The heuristic providing lower bounds. */
+	private final Heuristic heuristic;
+
+	/** The solver computing exact solution lengths. */
+	private final IdaStarSolver solver;
+
+	/** The amount of candidates tried before giving up. */
+	private final int attempts;
+
+	/** Amount of candidates accepted by the heuristic since the creation. */
+	private long heuristicAccepts;
+
+	/** Amount of exact checks since the creation. */
+	private long exactChecks;
+
+	/**
+	 * Instantiates a new generator using the linear conflict heuristic and default limits.
+	 *
+	 * @param random The random number generator.
+	 */
+	public PuzzleGenerator(Random random)
+	{
+		this(random, new LinearConflictHeuristic(), DEFAULT_ATTEMPTS, DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * Instantiates a new generator.
+	 *
+	 * @param random The random number generator.
+	 * @param heuristic The heuristic providing lower bounds and guiding the exact checks.
+	 * @param attempts The amount of candidates tried before giving up.
+	 * @param nodeLimit The amount of nodes a single exact check may expand.
+	 */
+	public PuzzleGenerator(Random random, Heuristic heuristic, int attempts, long nodeLimit)
+	{
+		if (random == null)
+		{
+			throw new IllegalArgumentException("random");
+		}
+
+		if (heuristic == null)
+		{
+			throw new IllegalArgumentException("heuristic");
+		}
+
+		if (attempts < 1)
+		{
+			throw new IllegalArgumentException("attempts");
+		}
+
+		this.random = random;
+		this.heuristic = heuristic;
+		this.attempts = attempts;
+		solver = new IdaStarSolver(heuristic, nodeLimit);
+	}
+
+	/**
+	 * Shuffles a board to the solution length range of a difficulty.
+	 *
+	 * @param board The board to be shuffled.
+	 * @param difficulty The difficulty.
+	 * @return true if the board meets the range; false if all attempts failed and the board holds the last candidate
+	 */
+	public boolean generate(PuzzleBoard board, Difficulty difficulty)
+	{
+		if (difficulty == null)
+		{
+			throw new IllegalArgumentException("difficulty");
+		}
+
+		return generate(board, difficulty.getMinSolutionLength(), difficulty.getMaxSolutionLength());
+	}
+
+	/**
+	 * Shuffles a board so that its shortest solution length falls into a range.
+	 *
+	 * @param board The board to be shuffled.
+	 * @param minLength The minimal solution length.
+	 * @param maxLength The maximal solution length.
+	 * @return true if the board meets the range; false if all attempts failed and the board holds the last candidate
+	 */
+	public boolean generate(PuzzleBoard board, int minLength, int maxLength)
+	{
+		if (board == null)
+		{
+			throw new IllegalArgumentException("board");
+		}
+
+		if (minLength < 1 || maxLength < minLength)
+		{
+			throw new IllegalArgumentException("minLength or maxLength");
+		}
+
+		for (int attempt = 0; attempt < attempts; attempt++)
+		{
+			board.shuffle(maxLength > minLength ? maxLength - random.nextInt(2) : maxLength, random);
+
+			// the walk bounds the solution from above, the heuristics from below
+			if (board.getManhattanDistance() >= minLength || heuristic.estimate(new SearchState(board)) >= minLength)
+			{
+				heuristicAccepts++;
+				return true;
+			}
+
+			exactChecks++;
+			SolverResult result = solver.solve(board);
+			if (result.isSolved() && result.getMoves().length >= minLength)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the length no shortest solution of a board exceeds.
+	 *
+	 * @param size The board size.
+	 * @return The maximal solution length or {@link Integer#MAX_VALUE} if no bound is known for the size.
+	 */
+	public static int getMaxSolutionLength(int size)
+	{
+		if (size < 2)
+		{
+			throw new IllegalArgumentException("size");
+		}
+
+		return size - 2 < MAX_SOLUTION_LENGTHS.length ? MAX_SOLUTION_LENGTHS[size - 2] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return Amount of candidates accepted by the heuristic without search.
+	 */
+	public long getHeuristicAccepts()
+	{
+		return heuristicAccepts;
+	}
+
+	/**
+	 * @return Amount of candidates checked by the exact search.
+	 */
+	public long getExactChecks()
+	{
+		return exactChecks;
+	}
+}
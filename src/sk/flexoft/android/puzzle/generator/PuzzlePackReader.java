@@ -0,0 +1,141 @@
+package sk.flexoft.android.puzzle.generator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import sk.flexoft.android.puzzle.core.BoardCodec;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Reads boards of a pack written by {@link BatchPuzzleGenerator} one by one.
+ */
+public class PuzzlePackReader {
+
+	/** The pack input. */
+	private final DataInputStream in;
+
+	/** The board size. */
+	private final int size;
+
+	/** Amount of boards in the pack. */
+	private final int count;
+
+	/** The minimal solution length or 0 for uniformly random boards. */
+	private final int minLength;
+
+	/** The maximal solution length or 0 for uniformly random boards. */
+	private final int maxLength;
+
+	/** The buffer of a single packed board. */
+	private final byte[] packed;
+
+	/** Amount of boards read so far. */
+	private int read;
+
+	/**
+	 * Instantiates a new reader and reads the pack header.
+	 *
+	 * @param input The pack input; it is not closed by the reader.
+	 * @throws IOException Signals the input is not a pack.
+	 */
+	public PuzzlePackReader(InputStream input) throws IOException
+	{
+		if (input == null)
+		{
+			throw new IllegalArgumentException("input");
+		}
+
+		in = new DataInputStream(input);
+		if (in.readInt() != BatchPuzzleGenerator.MAGIC)
+		{
+			throw new IOException("Not a puzzle pack.");
+		}
+
+		size = in.readInt();
+		count = in.readInt();
+		minLength = in.readInt();
+		maxLength = in.readInt();
+		if (size < 2 || count < 0)
+		{
+			throw new IOException("Invalid puzzle pack header.");
+		}
+
+		packed = new byte[BoardCodec.getPackedLength(size)];
+	}
+
+	/**
+	 * @return The board size.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Amount of boards in the pack.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return The minimal solution length or 0 for uniformly random boards.
+	 */
+	public int getMinLength()
+	{
+		return minLength;
+	}
+
+	/**
+	 * @return The maximal solution length or 0 for uniformly random boards.
+	 */
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	/**
+	 * Reads the next board.
+	 *
+	 * @param board The board of the pack size to be updated.
+	 * @return true if a board has been read; false at the end of the pack
+	 * @throws IOException Signals the pack is truncated or corrupted.
+	 */
+	public boolean next(PuzzleBoard board) throws IOException
+	{
+		if (board == null || board.getSize() != size)
+		{
+			throw new IllegalArgumentException("board");
+		}
+
+		if (read == count)
+		{
+			return false;
+		}
+
+		try
+		{
+			in.readFully(packed);
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Truncated puzzle pack.");
+		}
+
+		try
+		{
+			BoardCodec.unpack(packed, 0, board);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Corrupted puzzle pack.");
+		}
+
+		read++;
+		return true;
+	}
+}
@@ -0,0 +1,432 @@
+package sk.flexoft.android.puzzle.recording;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.TreeMap;
+
+import sk.flexoft.android.puzzle.core.BoardCodec;
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Replays a recording written by {@link GameRecorder} game by game and move by move.
+ * The input is read through a fixed buffer and the games are replayed on boards owned by
+ * the reader, a single one per board size, so arbitrarily long recordings are processed
+ * in constant memory:
+ * <pre>
+ * while (reader.nextGame())
+ * {
+ *     while (reader.nextMove() != GameRecordReader.END_OF_GAME)
+ *     {
+ *         // inspect reader.getBoard() and reader.getElapsedTime()
+ *     }
+ * }
+ * </pre>
+ */
+public class GameRecordReader {
+
+	/** Value returned by {@link #nextMove()} when the game has no more moves. */
+	public static final int END_OF_GAME = -1;
+
+	/** Size of the input buffer. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The recording input. */
+	private final InputStream in;
+
+	/** The input buffer. */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/** The buffer of a packed arrangement. */
+	private byte[] packed = new byte[0];
+
+	/** The replay boards for individual board sizes. */
+	private final TreeMap<Integer, PuzzleBoard> boards = new TreeMap<Integer, PuzzleBoard>();
+
+	/** The position of the next byte in the buffer. */
+	private int position;
+
+	/** Amount of valid bytes in the buffer. */
+	private int limit;
+
+	/** The board of the current game or null. */
+	private PuzzleBoard board;
+
+	/** Indicates the start entry of the next game has been read already. */
+	private boolean startPending;
+
+	/** The wall clock start time of the current game. */
+	private long startTime;
+
+	/** The milliseconds elapsed from the start of the game to the last entry read. */
+	private long elapsedTime;
+
+	/** The elapsed time of the last solution of the board or -1. */
+	private long completionTime;
+
+	/** Amount of moves of the current game read so far. */
+	private int moveCount;
+
+	/**
+	 * Instantiates a new reader and reads the recording header.
+	 *
+	 * @param input The recording input; it is not closed by the reader.
+	 * @throws IOException Signals the input is not a recording of a supported version.
+	 */
+	public GameRecordReader(InputStream input) throws IOException
+	{
+		if (input == null)
+		{
+			throw new IllegalArgumentException("input");
+		}
+
+		in = input;
+		int magic = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			int value = read();
+			if (value < 0)
+			{
+				throw new IOException("Not a game recording.");
+			}
+
+			magic = (magic << 8) | value;
+		}
+
+		if (magic != GameRecorder.MAGIC)
+		{
+			throw new IOException("Not a game recording.");
+		}
+
+		int version = read();
+		if (version != GameRecorder.VERSION)
+		{
+			throw new IOException("Unsupported game recording version " + version + ".");
+		}
+	}
+
+	/**
+	 * Skips the rest of the current game and sets up the board of the next one.
+	 *
+	 * @return true if the next game has been read; false at the end of the recording
+	 * @throws IOException Signals the recording is truncated or corrupted.
+	 */
+	public boolean nextGame() throws IOException
+	{
+		while (!startPending)
+		{
+			if (readEntry(false) == END_OF_GAME && !startPending)
+			{
+				board = null;
+				return false;
+			}
+		}
+
+		startPending = false;
+		int size = readByte();
+		if (size < 2)
+		{
+			throw new IOException("Corrupted game recording.");
+		}
+
+		long time = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			time = (time << 8) | readByte();
+		}
+
+		board = boards.get(size);
+		if (board == null)
+		{
+			board = new PuzzleBoard(size);
+			boards.put(size, board);
+		}
+
+		readArrangement(board);
+		startTime = time;
+		elapsedTime = 0;
+		completionTime = -1;
+		moveCount = 0;
+		return true;
+	}
+
+	/**
+	 * Applies the next move of the current game to the board.
+	 *
+	 * @return The direction of the empty field move or {@link #END_OF_GAME}.
+	 * @throws IOException Signals the recording is truncated or corrupted.
+	 */
+	public int nextMove() throws IOException
+	{
+		if (board == null)
+		{
+			return END_OF_GAME;
+		}
+
+		return readEntry(true);
+	}
+
+	/**
+	 * @return The board of the current game or null before the first and after the last game.
+	 */
+	public PuzzleBoard getBoard()
+	{
+		return board;
+	}
+
+	/**
+	 * @return The wall clock time the current game started at, in milliseconds since the epoch.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * @return The milliseconds elapsed from the start of the current game to the last move read.
+	 */
+	public long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	/**
+	 * @return The elapsed time the board got solved at or -1 if it has not been solved so far.
+	 */
+	public long getCompletionTime()
+	{
+		return completionTime;
+	}
+
+	/**
+	 * @return Amount of moves of the current game read so far.
+	 */
+	public int getMoveCount()
+	{
+		return moveCount;
+	}
+
+	/**
+	 * Command line entry point printing a summary of a recording.
+	 *
+	 * @param args The recording file.
+	 * @throws Exception Signals the recording couldn't be read.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length != 1)
+		{
+			System.err.println("Usage: GameRecordReader recording");
+			System.exit(1);
+		}
+
+		long games = 0;
+		long finished = 0;
+		long moves = 0;
+		long finishedMoves = 0;
+		long completionTime = 0;
+		InputStream input = new FileInputStream(args[0]);
+		try
+		{
+			GameRecordReader reader = new GameRecordReader(input);
+			while (reader.nextGame())
+			{
+				while (reader.nextMove() != END_OF_GAME)
+				{
+					// replaying the moves validates them
+				}
+
+				games++;
+				moves += reader.getMoveCount();
+				if (reader.getCompletionTime() >= 0)
+				{
+					finished++;
+					finishedMoves += reader.getMoveCount();
+					completionTime += reader.getCompletionTime();
+				}
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+
+		System.out.printf("%d games, %d moves, %d finished with %.1f moves and %.1f s on average.%n",
+				games, moves, finished, finished == 0 ? 0.0 : (double)finishedMoves / finished,
+				finished == 0 ? 0.0 : completionTime / 1000.0 / finished);
+	}
+
+	/**
+	 * Reads entries up to the next move of the current game.
+	 *
+	 * @param apply true to apply the entries to the board; false to skip them
+	 * @return The direction of the move or {@link #END_OF_GAME} at a start entry or at the end of the recording.
+	 * @throws IOException Signals the recording is truncated or corrupted.
+	 */
+	private int readEntry(boolean apply) throws IOException
+	{
+		while (true)
+		{
+			if (position == limit && !fill())
+			{
+				return END_OF_GAME;
+			}
+
+			long value = readNumber();
+			if ((value & 1) != 0)
+			{
+				int direction = (int)(value >>> 1) & 3;
+				if (apply)
+				{
+					int cell = board.getGeometry().getNeighbour(board.getEmptyCell(), direction);
+					if (cell == BoardGeometry.NO_CELL)
+					{
+						throw new IOException("Corrupted game recording.");
+					}
+
+					board.exchange(cell);
+					elapsedTime += value >>> GameRecorder.MOVE_BITS;
+					moveCount++;
+				}
+
+				return direction;
+			}
+
+			int type = (int)(value >>> 1) & 7;
+			if (apply)
+			{
+				elapsedTime += value >>> GameRecorder.CONTROL_BITS;
+			}
+
+			switch (type)
+			{
+			case GameRecorder.ENTRY_START:
+				startPending = true;
+				return END_OF_GAME;
+			case GameRecorder.ENTRY_RESTORE:
+				if (board == null)
+				{
+					throw new IOException("Corrupted game recording.");
+				}
+
+				// the arrangement length depends on the board size, so a skipped one is read as well
+				readArrangement(board);
+				break;
+			case GameRecorder.ENTRY_FINISH:
+				if (apply)
+				{
+					completionTime = elapsedTime;
+				}
+				break;
+			default:
+				throw new IOException("Corrupted game recording.");
+			}
+		}
+	}
+
+	/**
+	 * Reads a packed arrangement into a board.
+	 *
+	 * @param target The board of the arrangement size.
+	 * @throws IOException Signals the recording is truncated or corrupted.
+	 */
+	private void readArrangement(PuzzleBoard target) throws IOException
+	{
+		int length = BoardCodec.getPackedLength(target.getSize());
+		if (packed.length < length)
+		{
+			packed = new byte[length];
+		}
+
+		for (int i = 0; i < length; i++)
+		{
+			packed[i] = (byte)readByte();
+		}
+
+		try
+		{
+			BoardCodec.unpack(packed, 0, target);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Corrupted game recording.");
+		}
+	}
+
+	/**
+	 * Reads an unsigned variable length number.
+	 *
+	 * @return The number.
+	 * @throws IOException Signals the recording is truncated or corrupted.
+	 */
+	private long readNumber() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+
+		throw new IOException("Corrupted game recording.");
+	}
+
+	/**
+	 * Reads a byte which must be present.
+	 *
+	 * @return The byte value.
+	 * @throws IOException Signals the recording is truncated.
+	 */
+	private int readByte() throws IOException
+	{
+		int value = read();
+		if (value < 0)
+		{
+			throw new IOException("Truncated game recording.");
+		}
+
+		return value;
+	}
+
+	/**
+	 * Reads a byte.
+	 *
+	 * @return The byte value or -1 at the end of the input.
+	 * @throws IOException Signals the input couldn't be read.
+	 */
+	private int read() throws IOException
+	{
+		if (position == limit && !fill())
+		{
+			return -1;
+		}
+
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * Refills the input buffer.
+	 *
+	 * @return true if some bytes have been read; false at the end of the input
+	 * @throws IOException Signals the input couldn't be read.
+	 */
+	private boolean fill() throws IOException
+	{
+		int count;
+		do
+		{
+			count = in.read(buffer, 0, buffer.length);
+		}
+		while (count == 0);
+
+		position = 0;
+		limit = Math.max(count, 0);
+		return count > 0;
+	}
+}
@@ -0,0 +1,310 @@
+package sk.flexoft.android.puzzle.recording;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import sk.flexoft.android.puzzle.core.BoardCodec;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+import sk.flexoft.android.puzzle.core.PuzzleBoardListener;
+
+/**
+ * @author Vladimir Iszer
+ * Appends the games played on the boards it listens to into a binary recording, which
+ * can be replayed by {@link GameRecordReader}. The recording starts with a header of the
+ * magic number and the format version, followed by entries of all games one after another,
+ * so later sessions simply append their games to the same file.
+ * <p>
+ * Every entry starts with an unsigned variable length number (7 bits per byte, least
+ * significant group first) holding the milliseconds elapsed since the previous entry of
+ * the game. Its lowest bit set marks a move, the next two bits being the direction of the
+ * empty field, so a move made within two seconds takes just two bytes. Otherwise the
+ * next three bits are the entry type:
+ * <ul>
+ * <li>{@link #ENTRY_START} followed by the board size byte, the wall clock start time
+ * as 8 bytes and the arrangement packed by {@link BoardCodec},</li>
+ * <li>{@link #ENTRY_RESTORE} followed by the packed arrangement the board was rewound to,</li>
+ * <li>{@link #ENTRY_FINISH} marking the board has been solved.</li>
+ * </ul>
+ * The recorder is meant to be notified by a single thread. As the listener notifications
+ * can't throw, the first write failure stops the recording and is kept for {@link #getError()}.
+ */
+public class GameRecorder implements PuzzleBoardListener {
+
+	/** The magic number starting a recording, "PZR1". */
+	static final int MAGIC = 0x505A5231;
+
+	/** The version of the entry format. */
+	static final int VERSION = 1;
+
+	/** The entry type of a new game. */
+	static final int ENTRY_START = 0;
+
+	/** The entry type of a rewound board. */
+	static final int ENTRY_RESTORE = 1;
+
+	/** The entry type of a solved board. */
+	static final int ENTRY_FINISH = 2;
+
+	/** Amount of bits of a move entry besides the elapsed time. */
+	static final int MOVE_BITS = 3;
+
+	/** Amount of bits of other entries besides the elapsed time. */
+	static final int CONTROL_BITS = 4;
+
+	/** The recording output. */
+	private final OutputStream out;
+
+	/** The buffer of a single entry. */
+	private byte[] entry = new byte[64];
+
+	/** The board of the game being recorded or null. */
+	private PuzzleBoard board;
+
+	/** The monotonic time of the previous entry in milliseconds. */
+	private long lastEntryTime;
+
+	/** The first write failure or null. */
+	private IOException error;
+
+	/** Indicates the output has been closed. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new recorder.
+	 *
+	 * @param output The recording output, preferably buffered; it is closed by {@link #close()}.
+	 * @param writeHeader true for a new recording; false when appending to an existing one
+	 */
+	public GameRecorder(OutputStream output, boolean writeHeader)
+	{
+		if (output == null)
+		{
+			throw new IllegalArgumentException("output");
+		}
+
+		out = output;
+		if (writeHeader)
+		{
+			int length = 0;
+			for (int shift = 24; shift >= 0; shift -= 8)
+			{
+				entry[length++] = (byte)(MAGIC >>> shift);
+			}
+
+			entry[length++] = VERSION;
+			write(length);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onGameStarted(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onGameStarted(PuzzleBoard board) {
+		if (closed)
+		{
+			return;
+		}
+
+		this.board = board;
+		lastEntryTime = now();
+
+		int size = board.getSize();
+		ensureCapacity(3 + 8 + BoardCodec.getPackedLength(size));
+		int length = putNumber(0, ENTRY_START << 1);
+		entry[length++] = (byte)size;
+		long startTime = System.currentTimeMillis();
+		for (int shift = 56; shift >= 0; shift -= 8)
+		{
+			entry[length++] = (byte)(startTime >>> shift);
+		}
+
+		BoardCodec.pack(board, entry, length);
+		write(length + BoardCodec.getPackedLength(size));
+	}
+
+	/**
+	 * Records a game restored or kept from an earlier session. As the moves leading to its
+	 * arrangement may have been lost, it is recorded as a new game starting at the arrangement.
+	 *
+	 * @param board The board of the game.
+	 */
+	public void resume(PuzzleBoard board)
+	{
+		if (board == null)
+		{
+			throw new IllegalArgumentException("board");
+		}
+
+		onGameStarted(board);
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onEmptyFieldMoved(sk.flexoft.android.puzzle.core.PuzzleBoard, int, int)
+	 */
+	@Override
+	public void onEmptyFieldMoved(PuzzleBoard board, int direction, int count) {
+		if (board == this.board)
+		{
+			// the moves of a slide are recorded one by one, all but the first made at once
+			ensureCapacity(10 + count);
+			int length = putNumber(0, (elapsed() << MOVE_BITS) | (direction << 1) | 1);
+			for (int i = 1; i < count; i++)
+			{
+				length = putNumber(length, (direction << 1) | 1);
+			}
+
+			write(length);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onBoardRestored(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onBoardRestored(PuzzleBoard board) {
+		if (board == this.board)
+		{
+			int packedLength = BoardCodec.getPackedLength(board.getSize());
+			ensureCapacity(10 + packedLength);
+			int length = putNumber(0, (elapsed() << CONTROL_BITS) | (ENTRY_RESTORE << 1));
+			BoardCodec.pack(board, entry, length);
+			write(length + packedLength);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.core.PuzzleBoardListener#onGameFinished(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public void onGameFinished(PuzzleBoard board) {
+		if (board == this.board)
+		{
+			write(putNumber(0, (elapsed() << CONTROL_BITS) | (ENTRY_FINISH << 1)));
+			flush();
+		}
+	}
+
+	/**
+	 * @return The first write failure or null if the recording works.
+	 */
+	public IOException getError()
+	{
+		return error;
+	}
+
+	/**
+	 * Writes the buffered entries to the underlying output.
+	 */
+	public void flush()
+	{
+		if (error == null && !closed)
+		{
+			try
+			{
+				out.flush();
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes the output. The recorder ignores further games.
+	 */
+	public void close()
+	{
+		flush();
+		board = null;
+		if (closed)
+		{
+			return;
+		}
+
+		closed = true;
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			if (error == null)
+			{
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * @return The milliseconds elapsed since the previous entry.
+	 */
+	private long elapsed()
+	{
+		long time = now();
+		long elapsed = Math.max(0, time - lastEntryTime);
+		lastEntryTime = time;
+		return elapsed;
+	}
+
+	/**
+	 * @return The monotonic time in milliseconds.
+	 */
+	private static long now()
+	{
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * Stores an unsigned variable length number into the entry buffer.
+	 *
+	 * @param offset The offset in the entry buffer.
+	 * @param value The non negative number.
+	 * @return The offset after the number.
+	 */
+	private int putNumber(int offset, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			entry[offset++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		entry[offset++] = (byte)value;
+		return offset;
+	}
+
+	/**
+	 * Makes sure the entry buffer holds the given amount of bytes.
+	 *
+	 * @param length The amount of bytes.
+	 */
+	private void ensureCapacity(int length)
+	{
+		if (entry.length < length)
+		{
+			entry = new byte[length];
+		}
+	}
+
+	/**
+	 * Writes the entry buffer unless the recording has failed.
+	 *
+	 * @param length The length of the entry.
+	 */
+	private void write(int length)
+	{
+		if (error == null && !closed)
+		{
+			try
+			{
+				out.write(entry, 0, length);
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,441 @@
+package sk.flexoft.android.puzzle.solver;
+
+import java.util.Arrays;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Solves boards of any size the way people do: the first line of the unsolved area is
+ * completed puzzle by puzzle, then the first line across it, which leaves an area smaller
+ * by one in both directions. Finished puzzles are locked and every puzzle is brought home
+ * along a shortest path while the empty field is routed around it by a breadth-first search.
+ * The last two puzzles of a line are completed together by the usual corner manoeuvre,
+ * or by a tiny exact search when the first of them got trapped in the corner.
+ * The remaining 3x3 area is finished optimally by {@link EightPuzzleTable}.
+ * <p>
+ * The solution is far from the shortest one, but it is found in polynomial time and
+ * memory, so it serves hints on large boards where optimal search is hopeless.
+ * An instance solves one board at a time.
+ */
+public class ConstructiveSolver implements PuzzleSolver {
+
+	/** Size of the area finished by the complete table. */
+	private static final int FINAL_AREA_SIZE = EightPuzzleTable.SIZE;
+
+	/** Initial capacity of the move list. */
+	private static final int INITIAL_MOVE_CAPACITY = 1024;
+
+	/** Indicates the search was requested to stop. */
+	private volatile boolean cancelled;
+
+	/** The state being solved. */
+	private SearchState state;
+
+	/** The neighbour table of the solved state. */
+	private int[] neighbours;
+
+	/** Marks of the fields which must not be moved anymore. */
+	private boolean[] locked;
+
+	/** Marks of the fields visited by the current breadth-first search. */
+	private int[] visits;
+
+	/** The mark of the current breadth-first search. */
+	private int visit;
+
+	/** The field the current breadth-first search reached each field from. */
+	private int[] parents;
+
+	/** The queue of the breadth-first search. */
+	private int[] queue;
+
+	/** The path found by the breadth-first search, in reversed order. */
+	private int[] path;
+
+	/** The moves of the empty field made so far. */
+	private int[] moves;
+
+	/** Amount of moves made so far. */
+	private int moveCount;
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#solve(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public SolverResult solve(PuzzleBoard board) {
+		if (board == null)
+		{
+			throw new IllegalArgumentException("board");
+		}
+
+		cancelled = false;
+		int size = board.getSize();
+		if (size < FINAL_AREA_SIZE)
+		{
+			// too small for the reduction, but trivial for the optimal search
+			return new IdaStarSolver(new LinearConflictHeuristic()).solve(board);
+		}
+
+		state = new SearchState(board);
+		neighbours = state.neighbours;
+		int cellCount = state.tiles.length;
+		locked = new boolean[cellCount];
+		visits = new int[cellCount];
+		visit = 0;
+		parents = new int[cellCount];
+		queue = new int[cellCount];
+		path = new int[cellCount];
+		moves = new int[INITIAL_MOVE_CAPACITY];
+		moveCount = 0;
+
+		try
+		{
+			for (int origin = 0; size - origin > FINAL_AREA_SIZE; origin++)
+			{
+				// the line along the y axis, then the line along the x axis
+				int[] line = new int[size - origin];
+				for (int i = 0; i < line.length; i++)
+				{
+					line[i] = origin * size + origin + i;
+				}
+
+				if (!solveLine(line, size))
+				{
+					return new SolverResult(SolverResult.Status.Cancelled, null, false, moveCount);
+				}
+
+				line = new int[size - origin - 1];
+				for (int i = 0; i < line.length; i++)
+				{
+					line[i] = (origin + 1 + i) * size + origin;
+				}
+
+				if (!solveLine(line, 1))
+				{
+					return new SolverResult(SolverResult.Status.Cancelled, null, false, moveCount);
+				}
+			}
+
+			solveFinalArea(size - FINAL_AREA_SIZE);
+			return new SolverResult(SolverResult.Status.Solved, Arrays.copyOf(moves, moveCount), false, moveCount);
+		}
+		finally
+		{
+			state = null;
+			locked = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Brings home and locks all puzzles of a line.
+	 *
+	 * @param line The fields of the line.
+	 * @param inward The field index difference of a line field and its neighbour in the next line.
+	 * @return true if the line is solved; false if the solver has been cancelled
+	 */
+	private boolean solveLine(int[] line, int inward)
+	{
+		int last = line.length - 1;
+		for (int i = 0; i < last - 1; i++)
+		{
+			if (cancelled)
+			{
+				return false;
+			}
+
+			placePuzzle(line[i], line[i]);
+			locked[line[i]] = true;
+		}
+
+		if (cancelled)
+		{
+			return false;
+		}
+
+		// puzzle goals equal their field indexes
+		int first = line[last - 1];
+		int second = line[last];
+		if (state.tiles[first] != first || state.tiles[second] != second)
+		{
+			// the second puzzle waits at the goal of the first one and the first one next to it,
+			// so the empty field coming to the end of the line slides both home
+			placePuzzle(second, first);
+			locked[first] = true;
+			if (state.positions[first] == second || (state.blank == second && state.positions[first] == second + inward))
+			{
+				// the first puzzle or the empty field is trapped at the end of the line
+				solveLineEnd(first, second, inward);
+			}
+			else
+			{
+				placePuzzle(first, first + inward);
+				locked[first + inward] = true;
+				moveBlankTo(second, -1);
+				move(first);
+				move(first + inward);
+				locked[first + inward] = false;
+			}
+		}
+
+		locked[first] = true;
+		locked[second] = true;
+		return true;
+	}
+
+	/**
+	 * Brings the last two puzzles of a line home by a breadth-first search over the moves
+	 * within the two by three fields at the end of the line. Other puzzles of the area are
+	 * interchangeable, so the search has just 216 states.
+	 *
+	 * @param first The field of the last but one puzzle of the line.
+	 * @param second The field of the last puzzle of the line.
+	 * @param inward The field index difference of a line field and its neighbour in the next line.
+	 */
+	private void solveLineEnd(int first, int second, int inward)
+	{
+		int[] window = { first, second, first + inward, second + inward, first + 2 * inward, second + 2 * inward };
+		int cells = window.length;
+
+		if (state.blank != second)
+		{
+			moveBlankTo(second + inward, second);
+		}
+
+		locked[first] = false;
+
+		// a state is the window index of the first puzzle, the second puzzle and the empty field
+		int[] stateParents = new int[cells * cells * cells];
+		Arrays.fill(stateParents, -1);
+		int[] stateQueue = new int[stateParents.length];
+		int start = (indexOf(window, state.positions[first]) * cells + indexOf(window, state.positions[second])) * cells + indexOf(window, state.blank);
+		int head = 0;
+		int tail = 0;
+		stateQueue[tail++] = start;
+		stateParents[start] = start;
+
+		int goal = -1;
+		while (head < tail && goal < 0)
+		{
+			int current = stateQueue[head++];
+			int a = current / (cells * cells);
+			int b = current / cells % cells;
+			int blank = current % cells;
+			if (a == 0 && b == 1)
+			{
+				goal = current;
+				break;
+			}
+
+			for (int next = 0; next < cells; next++)
+			{
+				if (!state.geometry.areAdjacent(window[blank], window[next]))
+				{
+					continue;
+				}
+
+				int nextState = ((a == next ? blank : a) * cells + (b == next ? blank : b)) * cells + next;
+				if (stateParents[nextState] < 0)
+				{
+					stateParents[nextState] = current;
+					stateQueue[tail++] = nextState;
+				}
+			}
+		}
+
+		if (goal < 0)
+		{
+			throw new IllegalStateException("The end of the line can't be solved.");
+		}
+
+		int length = 0;
+		for (int step = goal; step != start; step = stateParents[step])
+		{
+			stateQueue[length++] = window[step % cells];
+		}
+
+		for (int i = length - 1; i >= 0; i--)
+		{
+			move(stateQueue[i]);
+		}
+	}
+
+	/**
+	 * Finds a value in an array.
+	 *
+	 * @param values The array.
+	 * @param value The value.
+	 * @return The index of the value.
+	 */
+	private static int indexOf(int[] values, int value)
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i] == value)
+			{
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("value");
+	}
+
+	/**
+	 * Moves a puzzle along a shortest path over unlocked fields.
+	 *
+	 * @param puzzle The puzzle.
+	 * @param target The field the puzzle has to get to.
+	 */
+	private void placePuzzle(int puzzle, int target)
+	{
+		int from = state.positions[puzzle];
+		if (from == target)
+		{
+			return;
+		}
+
+		int length = findPath(from, target, -1);
+		if (length < 0)
+		{
+			throw new IllegalStateException("Puzzle " + puzzle + " can't reach field " + target + ".");
+		}
+
+		// the path is stored from the target back, so copy it before the empty field routing reuses the buffer
+		int[] steps = new int[length];
+		for (int i = 0; i < length; i++)
+		{
+			steps[i] = path[length - 1 - i];
+		}
+
+		for (int step : steps)
+		{
+			moveBlankTo(step, state.positions[puzzle]);
+			move(state.positions[puzzle]);
+		}
+	}
+
+	/**
+	 * Moves the empty field along a shortest path over unlocked fields.
+	 *
+	 * @param target The field the empty field has to get to.
+	 * @param avoid A field the empty field must not cross or -1.
+	 */
+	private void moveBlankTo(int target, int avoid)
+	{
+		int length = findPath(state.blank, target, avoid);
+		if (length < 0)
+		{
+			throw new IllegalStateException("The empty field can't reach field " + target + ".");
+		}
+
+		for (int i = length - 1; i >= 0; i--)
+		{
+			move(path[i]);
+		}
+	}
+
+	/**
+	 * Finds a shortest path over unlocked fields by a breadth-first search.
+	 *
+	 * @param from The starting field.
+	 * @param to The target field.
+	 * @param avoid A field the path must not cross or -1.
+	 * @return The amount of steps stored in {@link #path} from the target back or -1 if there is no path.
+	 */
+	private int findPath(int from, int to, int avoid)
+	{
+		visit++;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+		visits[from] = visit;
+
+		while (head < tail)
+		{
+			int cell = queue[head++];
+			if (cell == to)
+			{
+				int length = 0;
+				for (int step = to; step != from; step = parents[step])
+				{
+					path[length++] = step;
+				}
+
+				return length;
+			}
+
+			int base = cell * BoardGeometry.DIRECTIONS;
+			for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+			{
+				int next = neighbours[base + direction];
+				if (next != BoardGeometry.NO_CELL && next != avoid && !locked[next] && visits[next] != visit)
+				{
+					visits[next] = visit;
+					parents[next] = cell;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Moves the empty field to a neighbouring field and records the move.
+	 *
+	 * @param cell The neighbouring field.
+	 */
+	private void move(int cell)
+	{
+		if (moveCount == moves.length)
+		{
+			moves = Arrays.copyOf(moves, moves.length * 2);
+		}
+
+		moves[moveCount++] = state.geometry.getDirection(state.blank, cell);
+		state.moveBlank(cell);
+	}
+
+	/**
+	 * Finishes the area in the bottom right corner optimally.
+	 *
+	 * @param origin The x and y index of the top left field of the area.
+	 */
+	private void solveFinalArea(int origin)
+	{
+		int size = state.size;
+		int[] puzzles = new int[FINAL_AREA_SIZE * FINAL_AREA_SIZE];
+		for (int x = 0; x < FINAL_AREA_SIZE; x++)
+		{
+			for (int y = 0; y < FINAL_AREA_SIZE; y++)
+			{
+				int puzzle = state.tiles[(origin + x) * size + origin + y];
+				if (puzzle != PuzzleBoard.EMPTY_FIELD_IDX)
+				{
+					// the goal of the puzzle relative to the area
+					puzzle = (puzzle / size - origin) * FINAL_AREA_SIZE + puzzle % size - origin;
+				}
+
+				puzzles[x * FINAL_AREA_SIZE + y] = puzzle;
+			}
+		}
+
+		PuzzleBoard area = new PuzzleBoard(FINAL_AREA_SIZE);
+		area.setPuzzles(puzzles);
+
+		// directions have the same meaning on the area and on the whole board
+		for (int direction : EightPuzzleTable.getInstance().solve(area).getMoves())
+		{
+			move(neighbours[state.blank * BoardGeometry.DIRECTIONS + direction]);
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package sk.flexoft.android.puzzle.solver;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Complete table of optimal solution lengths of all 181,440 solvable 3x3 boards.
+ * A state is indexed by the empty field and the rank of the first six puzzles in field
+ * order; the last two puzzles follow from the permutation parity of solvable boards.
+ * Distances take 5 bits each, so the whole table occupies about 110 KB. It is generated
+ * by a breadth-first search from the goal on first use, which takes a fraction of a second.
+ */
+public final class EightPuzzleTable implements PuzzleSolver {
+
+	/** The board size covered by the table. */
+	public static final int SIZE = 3;
+
+	/** Amount of fields on the board. */
+	private static final int CELLS = SIZE * SIZE;
+
+	/** Amount of puzzles on the board. */
+	private static final int PUZZLES = CELLS - 1;
+
+	/** Amount of ranked placements of the first six puzzles for a single empty field position. */
+	private static final int PREFIX_PLACEMENTS = 8 * 7 * 6 * 5 * 4 * 3;
+
+	/** Amount of solvable states. */
+	public static final int STATE_COUNT = CELLS * PREFIX_PLACEMENTS;
+
+	/** Bits used by a single distance. */
+	private static final int BITS = 5;
+
+	/** Mask of a single distance. */
+	private static final int MASK = (1 << BITS) - 1;
+
+	/** The shared table instance. */
+	private static EightPuzzleTable instance;
+
+	/** The layout tables of the board. */
+	private final BoardGeometry geometry = BoardGeometry.get(SIZE);
+
+	/** The packed distances. */
+	private final byte[] distances;
+
+	/**
+	 * Instantiates the table by computing all distances.
+	 */
+	private EightPuzzleTable()
+	{
+		// one spare byte allows reading every entry as two bytes
+		distances = new byte[(STATE_COUNT * BITS + 7) / 8 + 1];
+		generate();
+	}
+
+	/**
+	 * Returns the shared table, generating it on the first call.
+	 *
+	 * @return The table.
+	 */
+	public static synchronized EightPuzzleTable getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new EightPuzzleTable();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * @return Amount of bytes occupied by the packed distances.
+	 */
+	public int getByteSize()
+	{
+		return distances.length;
+	}
+
+	/**
+	 * Gets the optimal solution length of a board.
+	 *
+	 * @param board The 3x3 board.
+	 * @return The amount of moves of the shortest solution.
+	 */
+	public int getDistance(PuzzleBoard board)
+	{
+		checkBoard(board);
+
+		int[] tiles = new int[CELLS];
+		for (int cell = 0; cell < CELLS; cell++)
+		{
+			tiles[cell] = board.getPuzzleIndexAt(cell);
+		}
+
+		return getDistance(getIndex(tiles, board.getEmptyCell()));
+	}
+
+	/**
+	 * Gets the first move of the shortest solution.
+	 *
+	 * @param board The 3x3 board.
+	 * @return The direction of the empty field move or {@link BoardGeometry#NO_CELL} if the board is solved.
+	 */
+	public int getBestMove(PuzzleBoard board)
+	{
+		checkBoard(board);
+
+		int[] tiles = new int[CELLS];
+		for (int cell = 0; cell < CELLS; cell++)
+		{
+			tiles[cell] = board.getPuzzleIndexAt(cell);
+		}
+
+		return getBestMove(tiles, board.getEmptyCell());
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#solve(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public SolverResult solve(PuzzleBoard board) {
+		checkBoard(board);
+
+		int[] tiles = new int[CELLS];
+		for (int cell = 0; cell < CELLS; cell++)
+		{
+			tiles[cell] = board.getPuzzleIndexAt(cell);
+		}
+
+		int empty = board.getEmptyCell();
+		int[] moves = new int[getDistance(getIndex(tiles, empty))];
+		for (int i = 0; i < moves.length; i++)
+		{
+			int direction = getBestMove(tiles, empty);
+			int next = geometry.getNeighbour(empty, direction);
+			tiles[empty] = tiles[next];
+			tiles[next] = PuzzleBoard.EMPTY_FIELD_IDX;
+			empty = next;
+			moves[i] = direction;
+		}
+
+		return new SolverResult(SolverResult.Status.Solved, moves, true, moves.length);
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		// lookups finish immediately
+	}
+
+	/**
+	 * Gets the first move of the shortest solution.
+	 *
+	 * @param tiles The puzzle at each field, modified during the call and restored afterwards.
+	 * @param empty The empty field.
+	 * @return The direction of the empty field move or {@link BoardGeometry#NO_CELL} if the board is solved.
+	 */
+	private int getBestMove(int[] tiles, int empty)
+	{
+		int distance = getDistance(getIndex(tiles, empty));
+		if (distance == 0)
+		{
+			return BoardGeometry.NO_CELL;
+		}
+
+		for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+		{
+			int next = geometry.getNeighbour(empty, direction);
+			if (next == BoardGeometry.NO_CELL)
+			{
+				continue;
+			}
+
+			tiles[empty] = tiles[next];
+			tiles[next] = PuzzleBoard.EMPTY_FIELD_IDX;
+			int nextDistance = getDistance(getIndex(tiles, next));
+			tiles[next] = tiles[empty];
+			tiles[empty] = PuzzleBoard.EMPTY_FIELD_IDX;
+
+			if (nextDistance < distance)
+			{
+				return direction;
+			}
+		}
+
+		throw new IllegalStateException("Inconsistent distance table.");
+	}
+
+	/**
+	 * Validates a board passed to the table.
+	 *
+	 * @param board The board.
+	 */
+	private static void checkBoard(PuzzleBoard board)
+	{
+		if (board == null || board.getSize() != SIZE)
+		{
+			throw new IllegalArgumentException("board");
+		}
+	}
+
+	/**
+	 * Computes the table index of a state.
+	 *
+	 * @param tiles The puzzle at each field.
+	 * @param empty The empty field.
+	 * @return The table index.
+	 */
+	private static int getIndex(int[] tiles, int empty)
+	{
+		int rank = 0;
+		int used = 0;
+		int ranked = 0;
+		for (int cell = 0; cell < CELLS && ranked < 6; cell++)
+		{
+			int tile = tiles[cell];
+			if (tile == PuzzleBoard.EMPTY_FIELD_IDX)
+			{
+				continue;
+			}
+
+			// the puzzle value among the values not used by preceding puzzles
+			int smaller = Integer.bitCount(used & ((1 << tile) - 1));
+			rank = rank * (PUZZLES - ranked) + tile - smaller;
+			used |= 1 << tile;
+			ranked++;
+		}
+
+		return empty * PREFIX_PLACEMENTS + rank;
+	}
+
+	/**
+	 * Converts a table index back to a state.
+	 *
+	 * @param index The table index.
+	 * @param tiles The puzzle at each field to be filled.
+	 * @return The empty field.
+	 */
+	private static int setState(int index, int[] tiles)
+	{
+		int empty = index / PREFIX_PLACEMENTS;
+		int rank = index % PREFIX_PLACEMENTS;
+
+		int[] sequence = new int[PUZZLES];
+		for (int i = 5; i >= 0; i--)
+		{
+			sequence[i] = rank % (PUZZLES - i);
+			rank /= PUZZLES - i;
+		}
+
+		int used = 0;
+		for (int i = 0; i < 6; i++)
+		{
+			// the n-th value not used by preceding puzzles
+			int value = -1;
+			for (int remaining = sequence[i]; remaining >= 0; remaining--)
+			{
+				value++;
+				while ((used & (1 << value)) != 0)
+				{
+					value++;
+				}
+			}
+
+			sequence[i] = value;
+			used |= 1 << value;
+		}
+
+		int last = 0;
+		for (int value = 0; value < PUZZLES; value++)
+		{
+			if ((used & (1 << value)) == 0)
+			{
+				sequence[6 + last++] = value;
+			}
+		}
+
+		// solvable 3x3 boards have even amount of inversions
+		int inversions = 0;
+		for (int i = 0; i < PUZZLES; i++)
+		{
+			for (int j = i + 1; j < PUZZLES; j++)
+			{
+				if (sequence[i] > sequence[j])
+				{
+					inversions++;
+				}
+			}
+		}
+
+		if ((inversions & 1) != 0)
+		{
+			int swap = sequence[6];
+			sequence[6] = sequence[7];
+			sequence[7] = swap;
+		}
+
+		for (int cell = 0, i = 0; cell < CELLS; cell++)
+		{
+			tiles[cell] = cell == empty ? PuzzleBoard.EMPTY_FIELD_IDX : sequence[i++];
+		}
+
+		return empty;
+	}
+
+	/**
+	 * Reads a packed distance.
+	 *
+	 * @param index The table index.
+	 * @return The distance.
+	 */
+	private int getDistance(int index)
+	{
+		int bit = index * BITS;
+		int offset = bit >>> 3;
+		int value = (distances[offset] & 0xFF) | ((distances[offset + 1] & 0xFF) << 8);
+		return (value >>> (bit & 7)) & MASK;
+	}
+
+	/**
+	 * Writes a packed distance.
+	 *
+	 * @param index The table index.
+	 * @param distance The distance.
+	 */
+	private void setDistance(int index, int distance)
+	{
+		int bit = index * BITS;
+		int offset = bit >>> 3;
+		int value = distance << (bit & 7);
+		distances[offset] |= (byte)value;
+		distances[offset + 1] |= (byte)(value >>> 8);
+	}
+
+	/**
+	 * Fills the table by a breadth-first search from the solved board.
+	 */
+	private void generate()
+	{
+		int[] queue = new int[STATE_COUNT];
+		long[] visited = new long[(STATE_COUNT + 63) / 64];
+		int[] tiles = new int[CELLS];
+
+		for (int cell = 0; cell < PUZZLES; cell++)
+		{
+			tiles[cell] = cell;
+		}
+
+		tiles[PUZZLES] = PuzzleBoard.EMPTY_FIELD_IDX;
+
+		int head = 0;
+		int tail = 0;
+		int start = getIndex(tiles, PUZZLES);
+		queue[tail++] = start;
+		visited[start >>> 6] |= 1L << start;
+
+		while (head < tail)
+		{
+			int index = queue[head++];
+			int distance = getDistance(index);
+			int empty = setState(index, tiles);
+
+			for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+			{
+				int next = geometry.getNeighbour(empty, direction);
+				if (next == BoardGeometry.NO_CELL)
+				{
+					continue;
+				}
+
+				tiles[empty] = tiles[next];
+				tiles[next] = PuzzleBoard.EMPTY_FIELD_IDX;
+				int nextIndex = getIndex(tiles, next);
+				tiles[next] = tiles[empty];
+				tiles[empty] = PuzzleBoard.EMPTY_FIELD_IDX;
+
+				if ((visited[nextIndex >>> 6] & (1L << nextIndex)) == 0)
+				{
+					visited[nextIndex >>> 6] |= 1L << nextIndex;
+					setDistance(nextIndex, distance + 1);
+					queue[tail++] = nextIndex;
+				}
+			}
+		}
+
+		assert tail == STATE_COUNT;
+	}
+}
@@ -0,0 +1,29 @@
+package sk.flexoft.android.puzzle.solver;
+
+/**
+ * @author Vladimir Iszer
+ * Admissible estimate of the amount of moves needed to solve a {@link SearchState}.
+ * Implementations keep no per-search data, so a single instance may be shared by
+ * searches running on different threads.
+ */
+public interface Heuristic {
+
+	/**
+	 * Computes the estimate of a state from scratch.
+	 *
+	 * @param state The state to be evaluated.
+	 * @return The lower bound of the solution length.
+	 */
+	int estimate(SearchState state);
+
+	/**
+	 * Computes the estimate of the state following a single move. The method is called
+	 * before the move is applied, so only the parts affected by the move have to be evaluated.
+	 *
+	 * @param state The state before the move.
+	 * @param from The packed index of the puzzle moving into the empty field.
+	 * @param estimate The estimate of the state before the move.
+	 * @return The estimate of the state after the move.
+	 */
+	int estimateAfterMove(SearchState state, int from, int estimate);
+}
@@ -0,0 +1,333 @@
+package sk.flexoft.android.puzzle.solver;
+
+import java.util.Arrays;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Iterative deepening A* solver returning the shortest solution of a board.
+ * The search runs over a single mutable {@link SearchState} and keeps the heuristic
+ * value on the recursion stack, so no objects are allocated per expanded node.
+ * An instance solves one board at a time.
+ * <p>
+ * With a {@link TranspositionTable} the solver remembers for every finished subtree the
+ * lower bound of the solution length it has proven and uses it instead of the heuristic
+ * value when the state is reached again, in the same or a later iteration. The bound is
+ * proven for paths not reverting the last move, so it is keyed by the state together with
+ * the last move direction.
+ */
+public class IdaStarSolver implements PuzzleSolver {
+
+	/** The default amount of nodes a search may expand before giving up. */
+	public static final long DEFAULT_NODE_LIMIT = 20000000L;
+
+	/** Search result signalling the solution has been found. */
+	static final int FOUND = -1;
+
+	/** Search result signalling the search has been stopped. */
+	static final int ABORTED = -2;
+
+	/** Mask of the node counter deciding how often the cancellation is checked. */
+	private static final int CANCEL_CHECK_MASK = 0xFFF;
+
+	/** Initial capacity of the move path. */
+	private static final int INITIAL_PATH_LENGTH = 128;
+
+	/** The keys mixed into state hashes by the last move direction increased by one, as the first state has no last move. */
+	private static final long[] directionKeys = {
+		0x3C6EF372FE94F82BL, 0xA54FF53A5F1D36F1L, 0x510E527FADE682D1L, 0x9B05688C2B3E6C1FL, 0x1F83D9ABFB41BD6BL };
+
+	/** The heuristic guiding the search. */
+	private final Heuristic heuristic;
+
+	/** The amount of nodes a search may expand before giving up. */
+	private final long nodeLimit;
+
+	/** The table of proven lower bounds or null. */
+	private final TranspositionTable table;
+
+	/** Indicates the search was requested to stop. */
+	private volatile boolean cancelled;
+
+	/** The state being searched. */
+	private SearchState state;
+
+	/** The neighbour table of the searched state. */
+	private int[] neighbours;
+
+	/** The moves of the empty field on the current search path. */
+	private int[] path = new int[INITIAL_PATH_LENGTH];
+
+	/** The length of the solution once found. */
+	private int solutionLength;
+
+	/** Amount of nodes expanded during the current search. */
+	private long nodes;
+
+	/** The reason of stopping the search. */
+	private SolverResult.Status abortStatus;
+
+	/**
+	 * Instantiates a new solver with the default node limit.
+	 *
+	 * @param heuristic The heuristic guiding the search.
+	 */
+	public IdaStarSolver(Heuristic heuristic)
+	{
+		this(heuristic, DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * Instantiates a new solver.
+	 *
+	 * @param heuristic The heuristic guiding the search.
+	 * @param nodeLimit The amount of nodes a search may expand before giving up.
+	 */
+	public IdaStarSolver(Heuristic heuristic, long nodeLimit)
+	{
+		this(heuristic, nodeLimit, null);
+	}
+
+	/**
+	 * Instantiates a new solver using a transposition table.
+	 *
+	 * @param heuristic The heuristic guiding the search.
+	 * @param nodeLimit The amount of nodes a search may expand before giving up.
+	 * @param table The table of proven lower bounds shared by consecutive searches of this solver or null.
+	 */
+	public IdaStarSolver(Heuristic heuristic, long nodeLimit, TranspositionTable table)
+	{
+		if (heuristic == null)
+		{
+			throw new IllegalArgumentException("heuristic");
+		}
+
+		if (nodeLimit <= 0)
+		{
+			throw new IllegalArgumentException("nodeLimit");
+		}
+
+		this.heuristic = heuristic;
+		this.nodeLimit = nodeLimit;
+		this.table = table;
+	}
+
+	/**
+	 * @return The table of proven lower bounds or null.
+	 */
+	public TranspositionTable getTable()
+	{
+		return table;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#solve(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public SolverResult solve(PuzzleBoard board) {
+		cancelled = false;
+		state = new SearchState(board);
+		neighbours = state.neighbours;
+		nodes = 0;
+
+		if (table != null)
+		{
+			table.newGeneration();
+		}
+
+		try
+		{
+			int estimate = heuristic.estimate(state);
+			int bound = estimate;
+			while (true)
+			{
+				if (path.length <= bound)
+				{
+					path = new int[bound * 2];
+				}
+
+				int result = search(0, bound, estimate, -1);
+				if (result == FOUND)
+				{
+					return new SolverResult(SolverResult.Status.Solved, Arrays.copyOf(path, solutionLength), true, nodes);
+				}
+
+				if (result == ABORTED)
+				{
+					return new SolverResult(abortStatus, null, false, nodes);
+				}
+
+				bound = result;
+			}
+		}
+		finally
+		{
+			state = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Prepares the solver for searching subtrees of a search run by {@link ParallelIdaStarSolver}.
+	 * The nodes are counted from here on over all iterations of the search.
+	 */
+	void resetSubtreeSearch()
+	{
+		cancelled = false;
+		nodes = 0;
+	}
+
+	/**
+	 * Searches a subtree of a search run by {@link ParallelIdaStarSolver} within the cost bound.
+	 *
+	 * @param root The root state of the subtree, modified during the search and restored afterwards.
+	 * @param prefix The moves leading to the root state.
+	 * @param depth The amount of moves leading to the root state.
+	 * @param bound The cost bound of the current iteration.
+	 * @param estimate The heuristic value of the root state.
+	 * @param lastDirection The direction of the last move leading to the root state or -1.
+	 * @return {@link #FOUND}, {@link #ABORTED} or the smallest cost exceeding the bound.
+	 */
+	int searchSubtree(SearchState root, int[] prefix, int depth, int bound, int estimate, int lastDirection)
+	{
+		state = root;
+		neighbours = root.neighbours;
+		if (path.length <= bound)
+		{
+			path = new int[bound * 2];
+		}
+
+		System.arraycopy(prefix, 0, path, 0, depth);
+
+		try
+		{
+			return search(depth, bound, estimate, lastDirection);
+		}
+		finally
+		{
+			state = null;
+		}
+	}
+
+	/**
+	 * @return The moves of the solution found by the last subtree search.
+	 */
+	int[] getSubtreeSolution()
+	{
+		return Arrays.copyOf(path, solutionLength);
+	}
+
+	/**
+	 * @return Amount of nodes expanded since the last reset or the start of the last search.
+	 */
+	long getExpandedNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * @return The reason of stopping the last aborted search.
+	 */
+	SolverResult.Status getAbortStatus()
+	{
+		return abortStatus;
+	}
+
+	/**
+	 * Searches the subtree of the current state within the cost bound.
+	 *
+	 * @param depth The amount of moves made so far.
+	 * @param bound The cost bound of the current iteration.
+	 * @param estimate The heuristic value of the current state.
+	 * @param lastDirection The direction of the last move or -1.
+	 * @return {@link #FOUND}, {@link #ABORTED} or the smallest cost exceeding the bound.
+	 */
+	private int search(int depth, int bound, int estimate, int lastDirection)
+	{
+		int cost = depth + estimate;
+		if (cost > bound)
+		{
+			return cost;
+		}
+
+		if (estimate == 0 && state.isSolved())
+		{
+			solutionLength = depth;
+			return FOUND;
+		}
+
+		long key = 0;
+		if (table != null)
+		{
+			key = state.hash ^ directionKeys[lastDirection + 1];
+			int proven = table.probe(key);
+			if (proven != TranspositionTable.NOT_FOUND && depth + proven > bound)
+			{
+				return depth + proven;
+			}
+		}
+
+		if ((++nodes & CANCEL_CHECK_MASK) == 0)
+		{
+			if (cancelled)
+			{
+				abortStatus = SolverResult.Status.Cancelled;
+				return ABORTED;
+			}
+
+			if (nodes >= nodeLimit)
+			{
+				abortStatus = SolverResult.Status.LimitReached;
+				return ABORTED;
+			}
+		}
+
+		int min = Integer.MAX_VALUE;
+		int blank = state.blank;
+		int base = blank * BoardGeometry.DIRECTIONS;
+		int reverse = lastDirection < 0 ? -1 : BoardGeometry.opposite(lastDirection);
+		for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+		{
+			int next = neighbours[base + direction];
+			if (next == BoardGeometry.NO_CELL || direction == reverse)
+			{
+				continue;
+			}
+
+			int nextEstimate = heuristic.estimateAfterMove(state, next, estimate);
+			state.moveBlank(next);
+			path[depth] = direction;
+
+			int result = search(depth + 1, bound, nextEstimate, direction);
+
+			state.moveBlank(blank);
+
+			if (result == FOUND || result == ABORTED)
+			{
+				return result;
+			}
+
+			if (result < min)
+			{
+				min = result;
+			}
+		}
+
+		if (table != null)
+		{
+			// no solution through this state is shorter than min - depth moves
+			table.store(key, min - depth, bound - depth);
+		}
+
+		return min;
+	}
+}
@@ -0,0 +1,174 @@
+package sk.flexoft.android.puzzle.solver;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Manhattan distance enhanced by linear conflicts. Two puzzles located in their goal
+ * line but in reversed order have to leave the line, which adds two moves to the
+ * Manhattan distance for every puzzle outside the longest correctly ordered subsequence.
+ */
+public class LinearConflictHeuristic implements Heuristic {
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.Heuristic#estimate(sk.flexoft.android.puzzle.solver.SearchState)
+	 */
+	@Override
+	public int estimate(SearchState state) {
+		BoardGeometry geometry = state.geometry;
+		int distance = 0;
+		for (int tile = 0; tile < state.positions.length; tile++)
+		{
+			distance += geometry.getDistance(tile, state.positions[tile]);
+		}
+
+		int conflicts = 0;
+		for (int line = 0; line < state.size; line++)
+		{
+			conflicts += getColumnConflicts(state, line, -1, -1);
+			conflicts += getRowConflicts(state, line, -1, -1);
+		}
+
+		return distance + 2 * conflicts;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.Heuristic#estimateAfterMove(sk.flexoft.android.puzzle.solver.SearchState, int, int)
+	 */
+	@Override
+	public int estimateAfterMove(SearchState state, int from, int estimate) {
+		BoardGeometry geometry = state.geometry;
+		int to = state.blank;
+		int tile = state.tiles[from];
+
+		int result = estimate + geometry.getDistance(tile, to) - geometry.getDistance(tile, from);
+
+		// only the line the puzzle leaves or enters can change and only if it is the goal line of the puzzle
+		if (geometry.getX(from) == geometry.getX(to))
+		{
+			int goalRow = geometry.getY(tile);
+			if (goalRow == geometry.getY(from) || goalRow == geometry.getY(to))
+			{
+				result += 2 * (getRowConflicts(state, goalRow, from, to) - getRowConflicts(state, goalRow, -1, -1));
+			}
+		}
+		else
+		{
+			int goalColumn = geometry.getX(tile);
+			if (goalColumn == geometry.getX(from) || goalColumn == geometry.getX(to))
+			{
+				result += 2 * (getColumnConflicts(state, goalColumn, from, to) - getColumnConflicts(state, goalColumn, -1, -1));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts conflicts in a column.
+	 *
+	 * @param state The evaluated state.
+	 * @param x The horizontal index of the column.
+	 * @param from The field of a puzzle considered to be moved to the empty field or -1.
+	 * @param to The empty field the puzzle is moved to or -1.
+	 * @return The amount of puzzles which have to leave the column.
+	 */
+	private static int getColumnConflicts(SearchState state, int x, int from, int to)
+	{
+		int[] scratch = state.lineScratch;
+		BoardGeometry geometry = state.geometry;
+		int count = 0;
+		int cell = x * state.size;
+		for (int y = 0; y < state.size; y++, cell++)
+		{
+			int tile = getTile(state, cell, from, to);
+			if (tile != PuzzleBoard.EMPTY_FIELD_IDX && geometry.getX(tile) == x)
+			{
+				scratch[count++] = geometry.getY(tile);
+			}
+		}
+
+		return count - getIncreasingLength(scratch, count, state.size);
+	}
+
+	/**
+	 * Counts conflicts in a row.
+	 *
+	 * @param state The evaluated state.
+	 * @param y The vertical index of the row.
+	 * @param from The field of a puzzle considered to be moved to the empty field or -1.
+	 * @param to The empty field the puzzle is moved to or -1.
+	 * @return The amount of puzzles which have to leave the row.
+	 */
+	private static int getRowConflicts(SearchState state, int y, int from, int to)
+	{
+		int[] scratch = state.lineScratch;
+		BoardGeometry geometry = state.geometry;
+		int count = 0;
+		for (int x = 0, cell = y; x < state.size; x++, cell += state.size)
+		{
+			int tile = getTile(state, cell, from, to);
+			if (tile != PuzzleBoard.EMPTY_FIELD_IDX && geometry.getY(tile) == y)
+			{
+				scratch[count++] = geometry.getX(tile);
+			}
+		}
+
+		return count - getIncreasingLength(scratch, count, state.size);
+	}
+
+	/**
+	 * Gets the puzzle at a field as if the puzzle at <code>from</code> was moved to <code>to</code>.
+	 *
+	 * @param state The evaluated state.
+	 * @param cell The packed field index.
+	 * @param from The field of a puzzle considered to be moved to the empty field or -1.
+	 * @param to The empty field the puzzle is moved to or -1.
+	 * @return The puzzle at the field.
+	 */
+	private static int getTile(SearchState state, int cell, int from, int to)
+	{
+		if (cell == from)
+		{
+			return PuzzleBoard.EMPTY_FIELD_IDX;
+		}
+
+		if (cell == to)
+		{
+			return state.tiles[from];
+		}
+
+		return state.tiles[cell];
+	}
+
+	/**
+	 * Computes the length of the longest increasing subsequence of distinct values.
+	 *
+	 * @param values The array holding the sequence at its beginning and free space for the computation after <code>offset</code>.
+	 * @param count The length of the sequence.
+	 * @param offset The start of the free space.
+	 * @return The length of the longest increasing subsequence.
+	 */
+	private static int getIncreasingLength(int[] values, int count, int offset)
+	{
+		int length = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int value = values[i];
+			int j = 0;
+			while (j < length && values[offset + j] < value)
+			{
+				j++;
+			}
+
+			values[offset + j] = value;
+			if (j == length)
+			{
+				length++;
+			}
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,392 @@
+package sk.flexoft.android.puzzle.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Iterative deepening A* solver spreading every iteration over several threads.
+ * The top levels of the search tree are expanded breadth first into a frontier of
+ * subtrees, which the workers take one by one, so a worker finishing early simply takes
+ * the next subtree. All workers search an iteration with the same cost bound and all of
+ * them are cancelled as soon as one finds a solution, which is the shortest one as in
+ * the sequential search. Each worker is an {@link IdaStarSolver} over its own copy of the
+ * state, so the heuristic has to be safe for use by several threads, which holds for
+ * {@link LinearConflictHeuristic} and {@link PatternDatabaseHeuristic}.
+ * <p>
+ * The workers run on a fixed thread pool rather than fork/join tasks, which Android
+ * provides only from API level 21. Call {@link #shutdown()} to release the threads;
+ * they are daemon threads, so a solver left without it doesn't keep the process alive.
+ * An instance solves one board at a time.
+ */
+public class ParallelIdaStarSolver implements PuzzleSolver {
+
+	/** The name of the worker threads. */
+	private static final String THREAD_NAME = "ParallelIdaStarSolver";
+
+	/** Amount of frontier subtrees per worker, balancing the load of workers. */
+	private static final int SUBTREES_PER_WORKER = 32;
+
+	/** The heuristic guiding the search. */
+	private final Heuristic heuristic;
+
+	/** The workers searching subtrees. */
+	private final IdaStarSolver[] workers;
+
+	/** The threads running the workers. */
+	private final ExecutorService executor;
+
+	/** Indicates the search was requested to stop. */
+	private volatile boolean cancelled;
+
+	/**
+	 * A root of a subtree searched by a worker.
+	 */
+	private static final class Subtree
+	{
+		/** The state at the root. */
+		final SearchState state;
+
+		/** The moves leading to the root. */
+		final int[] moves;
+
+		/** The heuristic value of the root. */
+		final int estimate;
+
+		/**
+		 * Instantiates a new subtree root.
+		 *
+		 * @param state The state at the root.
+		 * @param moves The moves leading to the root.
+		 * @param estimate The heuristic value of the root.
+		 */
+		Subtree(SearchState state, int[] moves, int estimate)
+		{
+			this.state = state;
+			this.moves = moves;
+			this.estimate = estimate;
+		}
+
+		/**
+		 * @return The direction of the last move leading to the root or -1.
+		 */
+		int getLastDirection()
+		{
+			return moves.length == 0 ? -1 : moves[moves.length - 1];
+		}
+	}
+
+	/**
+	 * Instantiates a new solver using all processor cores and the default node limit.
+	 *
+	 * @param heuristic The heuristic guiding the search, safe for use by several threads.
+	 */
+	public ParallelIdaStarSolver(Heuristic heuristic)
+	{
+		this(heuristic, Runtime.getRuntime().availableProcessors(), IdaStarSolver.DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * Instantiates a new solver.
+	 *
+	 * @param heuristic The heuristic guiding the search, safe for use by several threads.
+	 * @param threads Amount of worker threads.
+	 * @param nodeLimit The amount of nodes each worker may expand over all iterations before the search gives up.
+	 */
+	public ParallelIdaStarSolver(Heuristic heuristic, int threads, long nodeLimit)
+	{
+		if (heuristic == null)
+		{
+			throw new IllegalArgumentException("heuristic");
+		}
+
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("threads");
+		}
+
+		this.heuristic = heuristic;
+		workers = new IdaStarSolver[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			workers[i] = new IdaStarSolver(heuristic, nodeLimit);
+		}
+
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			/* (non-Javadoc)
+			 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+			 */
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#solve(sk.flexoft.android.puzzle.core.PuzzleBoard)
+	 */
+	@Override
+	public SolverResult solve(PuzzleBoard board) {
+		cancelled = false;
+		SearchState root = new SearchState(board);
+		int rootEstimate = heuristic.estimate(root);
+		if (rootEstimate == 0 && root.isSolved())
+		{
+			return new SolverResult(SolverResult.Status.Solved, new int[0], true, 0);
+		}
+
+		// a solution shorter than the frontier depth is found while expanding it
+		List<Subtree> frontier = new ArrayList<Subtree>();
+		frontier.add(new Subtree(root, new int[0], rootEstimate));
+		int[] solution = expandFrontier(frontier, workers.length * SUBTREES_PER_WORKER);
+		long nodes = frontier.size();
+		if (solution != null)
+		{
+			return new SolverResult(SolverResult.Status.Solved, solution, true, nodes);
+		}
+
+		// the workers count their nodes over all iterations, so the node limit applies to the whole search
+		for (IdaStarSolver worker : workers)
+		{
+			worker.resetSubtreeSearch();
+		}
+
+		// a cancellation arriving before the workers have been reset would be lost otherwise
+		if (cancelled)
+		{
+			return new SolverResult(SolverResult.Status.Cancelled, null, false, nodes);
+		}
+
+		final Subtree[] subtrees = frontier.toArray(new Subtree[frontier.size()]);
+		final long frontierNodes = nodes;
+		int bound = rootEstimate;
+		while (true)
+		{
+			final int iterationBound = bound;
+			final AtomicInteger nextSubtree = new AtomicInteger();
+			final AtomicInteger nextBound = new AtomicInteger(Integer.MAX_VALUE);
+			final AtomicBoolean stopped = new AtomicBoolean();
+			final int[][] found = new int[1][];
+			final SolverResult.Status[] abortStatus = new SolverResult.Status[1];
+
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers.length);
+			for (final IdaStarSolver worker : workers)
+			{
+				tasks.add(new Callable<Void>() {
+
+					/* (non-Javadoc)
+					 * @see java.util.concurrent.Callable#call()
+					 */
+					@Override
+					public Void call() {
+						searchSubtrees(worker, subtrees, iterationBound, nextSubtree, nextBound, stopped, found, abortStatus);
+						return null;
+					}
+				});
+			}
+
+			try
+			{
+				for (Future<Void> future : executor.invokeAll(tasks))
+				{
+					future.get();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				cancel();
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			}
+
+			nodes = frontierNodes;
+			for (IdaStarSolver worker : workers)
+			{
+				nodes += worker.getExpandedNodes();
+			}
+
+			synchronized (found)
+			{
+				if (found[0] != null)
+				{
+					return new SolverResult(SolverResult.Status.Solved, found[0], true, nodes);
+				}
+
+				if (cancelled)
+				{
+					return new SolverResult(SolverResult.Status.Cancelled, null, false, nodes);
+				}
+
+				if (abortStatus[0] != null)
+				{
+					return new SolverResult(abortStatus[0], null, false, nodes);
+				}
+			}
+
+			bound = nextBound.get();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.PuzzleSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+		for (IdaStarSolver worker : workers)
+		{
+			worker.cancel();
+		}
+	}
+
+	/**
+	 * Stops the worker threads. The solver can't be used afterwards.
+	 */
+	public void shutdown()
+	{
+		cancel();
+		executor.shutdown();
+	}
+
+	/**
+	 * Expands the search tree breadth first until the frontier is large enough.
+	 *
+	 * @param frontier The roots of subtrees, initially the root of the whole tree.
+	 * @param minSize The amount of subtrees to reach.
+	 * @return The shortest solution if it is shorter than the frontier depth; otherwise null
+	 */
+	private int[] expandFrontier(List<Subtree> frontier, int minSize)
+	{
+		while (frontier.size() < minSize)
+		{
+			List<Subtree> next = new ArrayList<Subtree>(frontier.size() * 3);
+			for (Subtree subtree : frontier)
+			{
+				int blank = subtree.state.blank;
+				int reverse = subtree.moves.length == 0 ? -1 : BoardGeometry.opposite(subtree.getLastDirection());
+				for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+				{
+					int cell = subtree.state.neighbours[blank * BoardGeometry.DIRECTIONS + direction];
+					if (cell == BoardGeometry.NO_CELL || direction == reverse)
+					{
+						continue;
+					}
+
+					SearchState state = new SearchState(subtree.state);
+					int estimate = heuristic.estimateAfterMove(state, cell, subtree.estimate);
+					state.moveBlank(cell);
+
+					int[] moves = Arrays.copyOf(subtree.moves, subtree.moves.length + 1);
+					moves[subtree.moves.length] = direction;
+					if (estimate == 0 && state.isSolved())
+					{
+						return moves;
+					}
+
+					next.add(new Subtree(state, moves, estimate));
+				}
+			}
+
+			frontier.clear();
+			frontier.addAll(next);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Searches frontier subtrees one by one until all are done or the iteration stops.
+	 *
+	 * @param worker The worker searching the subtrees.
+	 * @param subtrees The frontier subtrees.
+	 * @param bound The cost bound of the iteration.
+	 * @param nextSubtree The index of the next subtree to be taken by a worker.
+	 * @param nextBound The smallest cost exceeding the bound found so far.
+	 * @param stopped Indicates a worker has stopped the iteration.
+	 * @param found The holder of the solution.
+	 * @param abortStatus The holder of the reason of stopping the iteration.
+	 */
+	private void searchSubtrees(IdaStarSolver worker, Subtree[] subtrees, int bound, AtomicInteger nextSubtree,
+			AtomicInteger nextBound, AtomicBoolean stopped, int[][] found, SolverResult.Status[] abortStatus)
+	{
+		int min = Integer.MAX_VALUE;
+		int index;
+		while (!cancelled && !stopped.get() && (index = nextSubtree.getAndIncrement()) < subtrees.length)
+		{
+			Subtree subtree = subtrees[index];
+			int depth = subtree.moves.length;
+			int result = depth + subtree.estimate;
+			if (result <= bound)
+			{
+				result = worker.searchSubtree(new SearchState(subtree.state), subtree.moves, depth, bound, subtree.estimate, subtree.getLastDirection());
+			}
+
+			if (result == IdaStarSolver.FOUND)
+			{
+				synchronized (found)
+				{
+					if (found[0] == null)
+					{
+						found[0] = worker.getSubtreeSolution();
+					}
+				}
+
+				// the other workers can't find a shorter solution in this iteration
+				stopped.set(true);
+				for (IdaStarSolver other : workers)
+				{
+					other.cancel();
+				}
+
+				return;
+			}
+
+			if (result == IdaStarSolver.ABORTED)
+			{
+				synchronized (found)
+				{
+					if (found[0] == null && abortStatus[0] == null)
+					{
+						abortStatus[0] = worker.getAbortStatus();
+					}
+				}
+
+				// a worker reaching the node limit stops the others as well
+				stopped.set(true);
+				for (IdaStarSolver other : workers)
+				{
+					other.cancel();
+				}
+
+				return;
+			}
+
+			min = Math.min(min, result);
+		}
+
+		int current;
+		while (min < (current = nextBound.get()) && !nextBound.compareAndSet(current, min))
+		{
+			// another worker has lowered the bound in the meantime, try again
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package sk.flexoft.android.puzzle.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author Vladimir Iszer
+ * Additive disjoint pattern database mapped from a file produced by {@link PatternDatabaseBuilder}.
+ * Each group of puzzles has a table holding the amount of moves of the group's puzzles needed to
+ * bring them home, indexed by the positions of the group's puzzles. The tables stay in the mapped
+ * file, so lookups use no heap and opening the database reads only the small header.
+ * <p>
+ * File layout (big endian): magic, board size, group count, for each group the puzzle count,
+ * puzzles and the offset of its table, followed by the tables with one byte per entry.
+ */
+public final class PatternDatabase {
+
+	/** The file magic "PDB1". */
+	static final int MAGIC = 0x50444231;
+
+	/** The board size the database is built for. */
+	private final int size;
+
+	/** Amount of fields on the board. */
+	private final int cellCount;
+
+	/** The puzzles of each group. */
+	private final int[][] groups;
+
+	/** The group of each puzzle. */
+	private final int[] puzzleGroups;
+
+	/** The table of each group. */
+	private final ByteBuffer[] tables;
+
+	/**
+	 * Instantiates a new database over mapped tables.
+	 *
+	 * @param size The board size.
+	 * @param groups The puzzles of each group.
+	 * @param tables The table of each group.
+	 */
+	private PatternDatabase(int size, int[][] groups, ByteBuffer[] tables)
+	{
+		this.size = size;
+		this.groups = groups;
+		this.tables = tables;
+		cellCount = size * size;
+		puzzleGroups = new int[cellCount - 1];
+
+		for (int group = 0; group < groups.length; group++)
+		{
+			for (int puzzle : groups[group])
+			{
+				puzzleGroups[puzzle] = group;
+			}
+		}
+	}
+
+	/**
+	 * Maps a database file into memory.
+	 *
+	 * @param file The database file.
+	 * @return The database.
+	 * @throws IOException Signals the file couldn't be read or is not a pattern database.
+	 */
+	public static PatternDatabase load(File file) throws IOException
+	{
+		if (file == null)
+		{
+			throw new IllegalArgumentException("file");
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			return load(channel, 0, channel.size());
+		}
+		finally
+		{
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps a database stored in a part of a file, e.g. an uncompressed application asset.
+	 *
+	 * @param channel The channel of the file.
+	 * @param offset The offset of the database in the file.
+	 * @param length The length of the database.
+	 * @return The database.
+	 * @throws IOException Signals the data couldn't be read or is not a pattern database.
+	 */
+	public static PatternDatabase load(FileChannel channel, long offset, long length) throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+		if (length < 12 || buffer.getInt() != MAGIC)
+		{
+			throw new IOException("Not a pattern database.");
+		}
+
+		int size = buffer.getInt();
+		int groupCount = buffer.getInt();
+		if (size < 2 || groupCount < 1 || groupCount >= size * size)
+		{
+			throw new IOException("Invalid pattern database header.");
+		}
+
+		int[][] groups = new int[groupCount][];
+		long[] offsets = new long[groupCount];
+		boolean[] covered = new boolean[size * size - 1];
+		for (int group = 0; group < groupCount; group++)
+		{
+			int count = buffer.getInt();
+			if (count < 1 || count >= size * size)
+			{
+				throw new IOException("Invalid pattern database group.");
+			}
+
+			groups[group] = new int[count];
+			for (int i = 0; i < count; i++)
+			{
+				int puzzle = buffer.getInt();
+				if (puzzle < 0 || puzzle >= covered.length || covered[puzzle])
+				{
+					throw new IOException("Invalid pattern database group.");
+				}
+
+				covered[puzzle] = true;
+				groups[group][i] = puzzle;
+			}
+
+			offsets[group] = buffer.getLong();
+		}
+
+		for (boolean isCovered : covered)
+		{
+			if (!isCovered)
+			{
+				throw new IOException("The pattern database groups don't cover the board.");
+			}
+		}
+
+		ByteBuffer[] tables = new ByteBuffer[groupCount];
+		for (int group = 0; group < groupCount; group++)
+		{
+			long tableLength = getTableLength(size * size, groups[group].length);
+			if (offsets[group] < buffer.position() || offsets[group] + tableLength > length)
+			{
+				throw new IOException("Truncated pattern database.");
+			}
+
+			buffer.limit((int)(offsets[group] + tableLength));
+			buffer.position((int)offsets[group]);
+			tables[group] = buffer.slice();
+			buffer.limit((int)length);
+		}
+
+		return new PatternDatabase(size, groups, tables);
+	}
+
+	/**
+	 * Computes the amount of entries of a group table.
+	 *
+	 * @param cellCount Amount of fields on the board.
+	 * @param puzzleCount Amount of puzzles in the group.
+	 * @return The amount of possible placements of the group's puzzles.
+	 */
+	static long getTableLength(int cellCount, int puzzleCount)
+	{
+		long length = 1;
+		for (int i = 0; i < puzzleCount; i++)
+		{
+			length *= cellCount - i;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Computes the table index of the group's puzzles placement.
+	 *
+	 * @param puzzles The puzzles of the group.
+	 * @param positions The packed field index of each puzzle of the board.
+	 * @param cellCount Amount of fields on the board.
+	 * @param movedPuzzle A puzzle considered to be at <code>movedTo</code> instead of its position or -1.
+	 * @param movedTo The field the moved puzzle is considered to be at.
+	 * @return The table index.
+	 */
+	static int getIndex(int[] puzzles, int[] positions, int cellCount, int movedPuzzle, int movedTo)
+	{
+		int index = 0;
+		for (int i = 0; i < puzzles.length; i++)
+		{
+			int puzzle = puzzles[i];
+			int position = puzzle == movedPuzzle ? movedTo : positions[puzzle];
+
+			// the position among the fields not occupied by preceding puzzles
+			int rank = position;
+			for (int j = 0; j < i; j++)
+			{
+				int previous = puzzles[j] == movedPuzzle ? movedTo : positions[puzzles[j]];
+				if (previous < position)
+				{
+					rank--;
+				}
+			}
+
+			index = index * (cellCount - i) + rank;
+		}
+
+		return index;
+	}
+
+	/**
+	 * @return The board size the database is built for.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Amount of puzzle groups.
+	 */
+	public int getGroupCount()
+	{
+		return groups.length;
+	}
+
+	/**
+	 * @param puzzle The puzzle index.
+	 * @return The group the puzzle belongs to.
+	 */
+	public int getGroup(int puzzle)
+	{
+		return puzzleGroups[puzzle];
+	}
+
+	/**
+	 * Looks up the amount of moves needed to bring a group home.
+	 *
+	 * @param group The group index.
+	 * @param positions The packed field index of each puzzle of the board.
+	 * @param movedPuzzle A puzzle considered to be at <code>movedTo</code> instead of its position or -1.
+	 * @param movedTo The field the moved puzzle is considered to be at.
+	 * @return The amount of moves of the group's puzzles.
+	 */
+	public int lookup(int group, int[] positions, int movedPuzzle, int movedTo)
+	{
+		return tables[group].get(getIndex(groups[group], positions, cellCount, movedPuzzle, movedTo)) & 0xFF;
+	}
+}
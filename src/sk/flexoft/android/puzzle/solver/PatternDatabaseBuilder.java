@@ -0,0 +1,406 @@
+package sk.flexoft.android.puzzle.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+
+/**
+ * @author Vladimir Iszer
+ * Builds {@link PatternDatabase} files offline. Each group table is computed by a breadth-first
+ * search from the goal over placements of the group's puzzles and the empty field, where moves of
+ * puzzles outside the group cost nothing. The search keeps one bit per placement and empty field
+ * per layer, so 4x4 tables need tens of megabytes and 5x5 six-puzzle tables about 1.5 GB of heap.
+ * <p>
+ * Usage: <code>PatternDatabaseBuilder size output [groups]</code>, where groups are separated by
+ * semicolons and consist of comma separated puzzle indexes, e.g. <code>0,1,2;3,4</code>.
+ */
+public final class PatternDatabaseBuilder {
+
+	/** Mark of a distance which hasn't been computed yet. */
+	private static final byte UNKNOWN = (byte)0xFF;
+
+	/** The layout tables of the board. */
+	private final BoardGeometry geometry;
+
+	/** Amount of fields on the board. */
+	private final int cellCount;
+
+	/** The puzzles of each group. */
+	private final int[][] groups;
+
+	/** Scratch space for converting table indexes to positions. */
+	private final int[] ranks;
+
+	/**
+	 * Instantiates a new builder.
+	 *
+	 * @param size The board size.
+	 * @param groups Disjoint puzzle groups covering all puzzles of the board.
+	 */
+	public PatternDatabaseBuilder(int size, int[][] groups)
+	{
+		if (groups == null || groups.length == 0)
+		{
+			throw new IllegalArgumentException("groups");
+		}
+
+		geometry = BoardGeometry.get(size);
+		cellCount = geometry.getCellCount();
+
+		boolean[] covered = new boolean[cellCount - 1];
+		for (int[] group : groups)
+		{
+			if (group == null || group.length == 0 || PatternDatabase.getTableLength(cellCount, group.length) > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("groups");
+			}
+
+			for (int puzzle : group)
+			{
+				if (puzzle < 0 || puzzle >= covered.length || covered[puzzle])
+				{
+					throw new IllegalArgumentException("groups");
+				}
+
+				covered[puzzle] = true;
+			}
+		}
+
+		for (boolean isCovered : covered)
+		{
+			if (!isCovered)
+			{
+				throw new IllegalArgumentException("groups");
+			}
+		}
+
+		this.groups = groups;
+		ranks = new int[cellCount];
+	}
+
+	/**
+	 * Gets the default partitioning, 6-6-3 for 4x4 and 6-6-6-6 for 5x5 boards.
+	 *
+	 * @param size The board size.
+	 * @return The puzzle groups.
+	 */
+	public static int[][] getDefaultGroups(int size)
+	{
+		switch (size)
+		{
+			case 4:
+				return new int[][] {
+						{ 0, 1, 2, 4, 5, 6 },
+						{ 8, 9, 10, 12, 13, 14 },
+						{ 3, 7, 11 } };
+			case 5:
+				return new int[][] {
+						{ 0, 1, 2, 5, 6, 7 },
+						{ 3, 4, 8, 9, 13, 14 },
+						{ 10, 11, 15, 16, 20, 21 },
+						{ 12, 17, 18, 19, 22, 23 } };
+			default:
+				throw new IllegalArgumentException("size");
+		}
+	}
+
+	/**
+	 * Builds all group tables and writes the database file.
+	 *
+	 * @param file The output file.
+	 * @throws IOException Signals the file couldn't be written.
+	 */
+	public void write(File file) throws IOException
+	{
+		long offset = 12;
+		for (int[] group : groups)
+		{
+			offset += 4 + 4 * group.length + 8;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try
+		{
+			out.writeInt(PatternDatabase.MAGIC);
+			out.writeInt(geometry.getSize());
+			out.writeInt(groups.length);
+			for (int[] group : groups)
+			{
+				out.writeInt(group.length);
+				for (int puzzle : group)
+				{
+					out.writeInt(puzzle);
+				}
+
+				out.writeLong(offset);
+				offset += PatternDatabase.getTableLength(cellCount, group.length);
+			}
+
+			for (int[] group : groups)
+			{
+				out.write(buildTable(group));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Computes the table of a group.
+	 *
+	 * @param puzzles The puzzles of the group.
+	 * @return The amount of group moves for each placement of the group's puzzles.
+	 */
+	byte[] buildTable(int[] puzzles)
+	{
+		int placements = (int)PatternDatabase.getTableLength(cellCount, puzzles.length);
+		int words = (int)(((long)placements * cellCount + 63) >>> 6);
+		int[] neighbours = geometry.getNeighbours();
+
+		byte[] distances = new byte[placements];
+		Arrays.fill(distances, UNKNOWN);
+
+		// states are placements combined with the empty field: placement * cellCount + empty field
+		long[] closed = new long[words];
+		long[] current = new long[words];
+		long[] next = new long[words];
+
+		int[] positions = new int[cellCount - 1];
+		int[] occupants = new int[cellCount];
+		int[] region = new int[cellCount];
+		boolean[] inRegion = new boolean[cellCount];
+		Arrays.fill(occupants, -1);
+
+		for (int puzzle : puzzles)
+		{
+			positions[puzzle] = puzzle;
+		}
+
+		setBit(current, (long)PatternDatabase.getIndex(puzzles, positions, cellCount, -1, -1) * cellCount + cellCount - 1);
+
+		int depth = 0;
+		boolean hasStates = true;
+		while (hasStates)
+		{
+			hasStates = false;
+			for (int w = 0; w < words; w++)
+			{
+				long word;
+				while ((word = current[w]) != 0)
+				{
+					current[w] = word & (word - 1);
+					long state = ((long)w << 6) + Long.numberOfTrailingZeros(word);
+					if (getBit(closed, state))
+					{
+						continue;
+					}
+
+					int placement = (int)(state / cellCount);
+					int empty = (int)(state % cellCount);
+					long base = (long)placement * cellCount;
+					hasStates = true;
+
+					if (distances[placement] == UNKNOWN)
+					{
+						distances[placement] = (byte)depth;
+					}
+
+					unrank(puzzles, placement, positions);
+					for (int i = 0; i < puzzles.length; i++)
+					{
+						occupants[positions[puzzles[i]]] = i;
+					}
+
+					// the empty field moves freely among fields not occupied by the group
+					int regionSize = 0;
+					region[regionSize++] = empty;
+					inRegion[empty] = true;
+					for (int r = 0; r < regionSize; r++)
+					{
+						int cell = region[r];
+						for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+						{
+							int neighbour = neighbours[cell * BoardGeometry.DIRECTIONS + direction];
+							if (neighbour != BoardGeometry.NO_CELL && occupants[neighbour] < 0 && !inRegion[neighbour])
+							{
+								inRegion[neighbour] = true;
+								region[regionSize++] = neighbour;
+							}
+						}
+					}
+
+					for (int r = 0; r < regionSize; r++)
+					{
+						long regionState = base + region[r];
+						setBit(closed, regionState);
+						clearBit(current, regionState);
+						clearBit(next, regionState);
+					}
+
+					// moving a group puzzle into the empty field costs one move
+					for (int r = 0; r < regionSize; r++)
+					{
+						int cell = region[r];
+						inRegion[cell] = false;
+						for (int direction = 0; direction < BoardGeometry.DIRECTIONS; direction++)
+						{
+							int neighbour = neighbours[cell * BoardGeometry.DIRECTIONS + direction];
+							if (neighbour == BoardGeometry.NO_CELL || occupants[neighbour] < 0)
+							{
+								continue;
+							}
+
+							int puzzle = puzzles[occupants[neighbour]];
+							long nextState = (long)PatternDatabase.getIndex(puzzles, positions, cellCount, puzzle, cell) * cellCount + neighbour;
+							if (!getBit(closed, nextState) && !getBit(current, nextState))
+							{
+								setBit(next, nextState);
+							}
+						}
+					}
+
+					for (int puzzle : puzzles)
+					{
+						occupants[positions[puzzle]] = -1;
+					}
+				}
+			}
+
+			long[] swap = current;
+			current = next;
+			next = swap;
+			depth++;
+		}
+
+		return distances;
+	}
+
+	/**
+	 * Converts a table index back to positions of the group's puzzles.
+	 *
+	 * @param puzzles The puzzles of the group.
+	 * @param index The table index.
+	 * @param positions The packed field index of each puzzle to be filled.
+	 */
+	private void unrank(int[] puzzles, int index, int[] positions)
+	{
+		for (int i = puzzles.length - 1; i >= 0; i--)
+		{
+			ranks[i] = index % (cellCount - i);
+			index /= cellCount - i;
+		}
+
+		for (int i = 0; i < puzzles.length; i++)
+		{
+			// the rank-th field not occupied by preceding puzzles
+			int position = ranks[i];
+			boolean changed = true;
+			while (changed)
+			{
+				changed = false;
+				int smaller = 0;
+				for (int j = 0; j < i; j++)
+				{
+					if (positions[puzzles[j]] <= position)
+					{
+						smaller++;
+					}
+				}
+
+				if (position != ranks[i] + smaller)
+				{
+					position = ranks[i] + smaller;
+					changed = true;
+				}
+			}
+
+			positions[puzzles[i]] = position;
+		}
+	}
+
+	/**
+	 * Reads a bit of a bit set.
+	 *
+	 * @param bits The bit set.
+	 * @param index The bit index.
+	 * @return true if the bit is set; otherwise false
+	 */
+	private static boolean getBit(long[] bits, long index)
+	{
+		return (bits[(int)(index >>> 6)] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets a bit of a bit set.
+	 *
+	 * @param bits The bit set.
+	 * @param index The bit index.
+	 */
+	private static void setBit(long[] bits, long index)
+	{
+		bits[(int)(index >>> 6)] |= 1L << index;
+	}
+
+	/**
+	 * Clears a bit of a bit set.
+	 *
+	 * @param bits The bit set.
+	 * @param index The bit index.
+	 */
+	private static void clearBit(long[] bits, long index)
+	{
+		bits[(int)(index >>> 6)] &= ~(1L << index);
+	}
+
+	/**
+	 * Parses puzzle groups given on the command line.
+	 *
+	 * @param text The groups separated by semicolons consisting of comma separated puzzle indexes.
+	 * @return The puzzle groups.
+	 */
+	private static int[][] parseGroups(String text)
+	{
+		String[] groupTexts = text.split(";");
+		int[][] result = new int[groupTexts.length][];
+		for (int group = 0; group < groupTexts.length; group++)
+		{
+			String[] puzzleTexts = groupTexts[group].split(",");
+			result[group] = new int[puzzleTexts.length];
+			for (int i = 0; i < puzzleTexts.length; i++)
+			{
+				result[group][i] = Integer.parseInt(puzzleTexts[i].trim());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Command line entry point.
+	 *
+	 * @param args The board size, the output file and optionally the puzzle groups.
+	 * @throws IOException Signals the file couldn't be written.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: PatternDatabaseBuilder size output [groups]");
+			System.exit(1);
+		}
+
+		int size = Integer.parseInt(args[0]);
+		int[][] groups = args.length > 2 ? parseGroups(args[2]) : getDefaultGroups(size);
+
+		long start = System.currentTimeMillis();
+		new PatternDatabaseBuilder(size, groups).write(new File(args[1]));
+		System.out.printf("Pattern database for %dx%d written to %s in %d ms.%n", size, size, args[1], System.currentTimeMillis() - start);
+	}
+}
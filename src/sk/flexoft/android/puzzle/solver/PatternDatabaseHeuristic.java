@@ -0,0 +1,60 @@
+package sk.flexoft.android.puzzle.solver;
+
+/**
+ * @author Vladimir Iszer
+ * Heuristic summing the values of all groups of an additive {@link PatternDatabase}.
+ * A move changes the position of a single puzzle, so only the table of its group is
+ * consulted again after the move.
+ */
+public class PatternDatabaseHeuristic implements Heuristic {
+
+	/** The pattern database. */
+	private final PatternDatabase database;
+
+	/**
+	 * Instantiates a new heuristic.
+	 *
+	 * @param database The pattern database.
+	 */
+	public PatternDatabaseHeuristic(PatternDatabase database)
+	{
+		if (database == null)
+		{
+			throw new IllegalArgumentException("database");
+		}
+
+		this.database = database;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.Heuristic#estimate(sk.flexoft.android.puzzle.solver.SearchState)
+	 */
+	@Override
+	public int estimate(SearchState state) {
+		if (state.size != database.getSize())
+		{
+			throw new IllegalArgumentException("state");
+		}
+
+		int result = 0;
+		for (int group = 0; group < database.getGroupCount(); group++)
+		{
+			result += database.lookup(group, state.positions, -1, -1);
+		}
+
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.solver.Heuristic#estimateAfterMove(sk.flexoft.android.puzzle.solver.SearchState, int, int)
+	 */
+	@Override
+	public int estimateAfterMove(SearchState state, int from, int estimate) {
+		int puzzle = state.tiles[from];
+		int group = database.getGroup(puzzle);
+
+		return estimate
+				- database.lookup(group, state.positions, -1, -1)
+				+ database.lookup(group, state.positions, puzzle, state.blank);
+	}
+}
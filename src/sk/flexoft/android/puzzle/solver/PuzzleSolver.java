@@ -0,0 +1,24 @@
+package sk.flexoft.android.puzzle.solver;
+
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Finds a sequence of moves solving a board. Solving may take long, so callers
+ * on the user interface thread are expected to run it in background.
+ */
+public interface PuzzleSolver {
+
+	/**
+	 * Solves the board. The board itself is not modified.
+	 *
+	 * @param board The board to be solved.
+	 * @return The outcome of the run.
+	 */
+	SolverResult solve(PuzzleBoard board);
+
+	/**
+	 * Requests a running {@link #solve(PuzzleBoard)} call to stop as soon as possible.
+	 */
+	void cancel();
+}
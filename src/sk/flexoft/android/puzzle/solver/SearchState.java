@@ -0,0 +1,190 @@
+package sk.flexoft.android.puzzle.solver;
+
+import sk.flexoft.android.puzzle.core.BoardGeometry;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Mutable copy of a board state used by searches. Unlike {@link PuzzleBoard} it keeps
+ * the position of every puzzle as well, has no listeners and is meant to be owned by
+ * a single searching thread.
+ */
+public final class SearchState {
+
+	/** The layout tables of the board. */
+	final BoardGeometry geometry;
+
+	/** The neighbour table of the geometry. */
+	final int[] neighbours;
+
+	/** The size of the board side. */
+	final int size;
+
+	/** The puzzle index at each packed field index. */
+	final int[] tiles;
+
+	/** The packed field index of each puzzle. */
+	final int[] positions;
+
+	/** Scratch space of twice the board side length for heuristics evaluating a line. */
+	final int[] lineScratch;
+
+	/** The packed index of the empty field. */
+	int blank;
+
+	/** The Zobrist hash of the state as defined by {@link PuzzleBoard#getHash()}. */
+	long hash;
+
+	/**
+	 * Creates a copy of a board state.
+	 *
+	 * @param board The board to be copied.
+	 */
+	public SearchState(PuzzleBoard board)
+	{
+		if (board == null)
+		{
+			throw new IllegalArgumentException("board");
+		}
+
+		geometry = board.getGeometry();
+		neighbours = geometry.getNeighbours();
+		size = geometry.getSize();
+		tiles = new int[geometry.getCellCount()];
+		positions = new int[tiles.length - 1];
+		lineScratch = new int[size * 2];
+		hash = board.getHash();
+
+		for (int cell = 0; cell < tiles.length; cell++)
+		{
+			int tile = board.getPuzzleIndexAt(cell);
+			tiles[cell] = tile;
+			if (tile == PuzzleBoard.EMPTY_FIELD_IDX)
+			{
+				blank = cell;
+			}
+			else
+			{
+				positions[tile] = cell;
+			}
+		}
+	}
+
+	/**
+	 * Creates a copy of another search state.
+	 *
+	 * @param other The state to be copied.
+	 */
+	public SearchState(SearchState other)
+	{
+		geometry = other.geometry;
+		neighbours = other.neighbours;
+		size = other.size;
+		tiles = other.tiles.clone();
+		positions = other.positions.clone();
+		lineScratch = new int[size * 2];
+		blank = other.blank;
+		hash = other.hash;
+	}
+
+	/**
+	 * @return The layout tables of the board.
+	 */
+	public BoardGeometry getGeometry()
+	{
+		return geometry;
+	}
+
+	/**
+	 * @return The size of the board side.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The packed index of the empty field.
+	 */
+	public int getBlank()
+	{
+		return blank;
+	}
+
+	/**
+	 * @return The Zobrist hash of the state, equal to the hash of the same board arrangement.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * @param cell The packed field index.
+	 * @return The puzzle at the field or {@link PuzzleBoard#EMPTY_FIELD_IDX}.
+	 */
+	public int getTile(int cell)
+	{
+		return tiles[cell];
+	}
+
+	/**
+	 * @param tile The puzzle index.
+	 * @return The packed field index the puzzle is located at.
+	 */
+	public int getPosition(int tile)
+	{
+		return positions[tile];
+	}
+
+	/**
+	 * Moves the puzzle at a field next to the empty field into the empty field.
+	 *
+	 * @param cell The packed index of the field next to the empty field.
+	 * @return The puzzle which has been moved.
+	 */
+	public int moveBlank(int cell)
+	{
+		int tile = tiles[cell];
+		tiles[blank] = tile;
+		positions[tile] = blank;
+		tiles[cell] = PuzzleBoard.EMPTY_FIELD_IDX;
+		hash ^= geometry.getZobristKey(cell, tile) ^ geometry.getZobristKey(blank, tile);
+		blank = cell;
+
+		return tile;
+	}
+
+	/**
+	 * Moves the empty field in a direction.
+	 *
+	 * @param direction One of the {@link BoardGeometry} directions.
+	 * @return The puzzle which has been moved.
+	 */
+	public int move(int direction)
+	{
+		int cell = neighbours[blank * BoardGeometry.DIRECTIONS + direction];
+		if (cell == BoardGeometry.NO_CELL)
+		{
+			throw new IllegalArgumentException("direction");
+		}
+
+		return moveBlank(cell);
+	}
+
+	/**
+	 * @return true if all puzzles are at their original positions; otherwise false
+	 */
+	public boolean isSolved()
+	{
+		for (int tile = 0; tile < positions.length; tile++)
+		{
+			if (positions[tile] != tile)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
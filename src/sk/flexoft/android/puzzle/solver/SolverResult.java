@@ -0,0 +1,96 @@
+package sk.flexoft.android.puzzle.solver;
+
+/**
+ * @author Vladimir Iszer
+ * The outcome of a solver run.
+ */
+public final class SolverResult {
+
+	/**
+	 * Defines possible outcomes of a solver run.
+	 */
+	public enum Status
+	{
+		/** A solution has been found. */
+		Solved,
+
+		/** The search gave up after expanding the allowed amount of nodes. */
+		LimitReached,
+
+		/** The search has been cancelled. */
+		Cancelled
+	}
+
+	/** The outcome of the run. */
+	private final Status status;
+
+	/** The moves of the empty field solving the board. */
+	private final int[] moves;
+
+	/** Indicates the solution is the shortest one. */
+	private final boolean optimal;
+
+	/** Amount of search nodes expanded during the run. */
+	private final long expandedNodes;
+
+	/**
+	 * Instantiates a new result.
+	 *
+	 * @param status The outcome of the run.
+	 * @param moves The moves of the empty field solving the board or null if not solved.
+	 * @param optimal Indicates the solution is the shortest one.
+	 * @param expandedNodes Amount of search nodes expanded during the run.
+	 */
+	public SolverResult(Status status, int[] moves, boolean optimal, long expandedNodes)
+	{
+		if (status == null)
+		{
+			throw new IllegalArgumentException("status");
+		}
+
+		this.status = status;
+		this.moves = moves;
+		this.optimal = optimal;
+		this.expandedNodes = expandedNodes;
+	}
+
+	/**
+	 * @return The outcome of the run.
+	 */
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return true if a solution has been found; otherwise false
+	 */
+	public boolean isSolved()
+	{
+		return status == Status.Solved;
+	}
+
+	/**
+	 * @return The moves of the empty field as {@link sk.flexoft.android.puzzle.core.BoardGeometry} directions or null if not solved.
+	 */
+	public int[] getMoves()
+	{
+		return moves;
+	}
+
+	/**
+	 * @return true if the solution is the shortest one; otherwise false
+	 */
+	public boolean isOptimal()
+	{
+		return optimal;
+	}
+
+	/**
+	 * @return Amount of search nodes expanded during the run.
+	 */
+	public long getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+}
@@ -0,0 +1,251 @@
+package sk.flexoft.android.puzzle.solver;
+
+/**
+ * @author Vladimir Iszer
+ * Fixed size hash table remembering a value per search state, e.g. a lower bound of the
+ * solution length learned by a search. It uses open addressing over two primitive arrays,
+ * so it allocates nothing after construction and fits a given memory budget exactly.
+ * <p>
+ * States hash into buckets of two slots. When both slots of a bucket are taken, the entry
+ * of an older search generation is replaced first, otherwise the one with the smaller
+ * depth, i.e. the one standing for the cheaper subtree. The table is meant to be used by
+ * a single searching thread.
+ */
+public final class TranspositionTable {
+
+	/** Value returned by {@link #probe(long)} for unknown states. */
+	public static final int NOT_FOUND = -1;
+
+	/** Amount of bytes taken by a single entry. */
+	public static final int ENTRY_BYTES = 16;
+
+	/** Amount of slots sharing a bucket. */
+	private static final int BUCKET_SLOTS = 2;
+
+	/** The largest value and depth an entry can hold. */
+	private static final int MAX_FIELD = 0xFFFF;
+
+	/** The state key of each slot. */
+	private final long[] keys;
+
+	/** The value, depth and generation of each slot; zero marks an empty slot. */
+	private final long[] data;
+
+	/** Mask selecting the bucket of a key. */
+	private final int bucketMask;
+
+	/** The generation of the current search, never zero. */
+	private int generation = 1;
+
+	/** Amount of lookups. */
+	private long probes;
+
+	/** Amount of lookups finding the state. */
+	private long hits;
+
+	/** Amount of stored values. */
+	private long stores;
+
+	/** Amount of stored values which have evicted another state. */
+	private long evictions;
+
+	/**
+	 * Instantiates a new table taking at most the given amount of memory.
+	 *
+	 * @param byteBudget The amount of bytes the table may take, at least two entries.
+	 */
+	public TranspositionTable(long byteBudget)
+	{
+		if (byteBudget < BUCKET_SLOTS * ENTRY_BYTES)
+		{
+			throw new IllegalArgumentException("byteBudget");
+		}
+
+		// the largest power of two amount of buckets fitting into the budget
+		long buckets = Long.highestOneBit(Math.min(byteBudget / (BUCKET_SLOTS * ENTRY_BYTES), 1 << 29));
+		keys = new long[(int)buckets * BUCKET_SLOTS];
+		data = new long[keys.length];
+		bucketMask = (int)buckets - 1;
+	}
+
+	/**
+	 * @return Amount of entries the table can hold.
+	 */
+	public int getCapacity()
+	{
+		return keys.length;
+	}
+
+	/**
+	 * @return Amount of bytes taken by the entries.
+	 */
+	public long getByteSize()
+	{
+		return (long)keys.length * ENTRY_BYTES;
+	}
+
+	/**
+	 * Forgets all states and statistics.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < data.length; i++)
+		{
+			keys[i] = 0;
+			data[i] = 0;
+		}
+
+		generation = 1;
+		resetStatistics();
+	}
+
+	/**
+	 * Starts a new search generation. Entries of previous generations stay readable
+	 * but are the first candidates for replacement.
+	 */
+	public void newGeneration()
+	{
+		generation++;
+		if (generation > MAX_FIELD)
+		{
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Looks up the value of a state.
+	 *
+	 * @param key The 64-bit hash of the state.
+	 * @return The stored value or {@link #NOT_FOUND}.
+	 */
+	public int probe(long key)
+	{
+		probes++;
+
+		int slot = getBucket(key);
+		for (int i = 0; i < BUCKET_SLOTS; i++, slot++)
+		{
+			if (keys[slot] == key && data[slot] != 0)
+			{
+				hits++;
+				return (int)(data[slot] & MAX_FIELD);
+			}
+		}
+
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Stores the value of a state. A value of a state already present is replaced only by
+	 * a larger one, as the values are meant to be lower bounds.
+	 *
+	 * @param key The 64-bit hash of the state.
+	 * @param value The value, clamped to 0..65535.
+	 * @param depth The amount of search work the value stands for, clamped to 0..65535.
+	 */
+	public void store(long key, int value, int depth)
+	{
+		value = Math.max(0, Math.min(value, MAX_FIELD));
+		depth = Math.max(0, Math.min(depth, MAX_FIELD));
+		long entry = ((long)generation << 32) | ((long)depth << 16) | value;
+		stores++;
+
+		int first = getBucket(key);
+		int victim = first;
+		long victimPriority = Long.MAX_VALUE;
+		for (int slot = first; slot < first + BUCKET_SLOTS; slot++)
+		{
+			long current = data[slot];
+			if (current != 0 && keys[slot] == key)
+			{
+				if ((current & MAX_FIELD) > value)
+				{
+					entry = (entry & ~(long)MAX_FIELD) | (current & MAX_FIELD);
+				}
+
+				data[slot] = entry;
+				return;
+			}
+
+			// empty slots go first, entries of the current generation with deeper subtrees are kept longest
+			long storedDepth = (current >>> 16) & MAX_FIELD;
+			long priority = current == 0 ? -1 : (int)(current >>> 32) == generation ? MAX_FIELD + 1 + storedDepth : storedDepth;
+			if (priority < victimPriority)
+			{
+				victim = slot;
+				victimPriority = priority;
+			}
+		}
+
+		if (data[victim] != 0)
+		{
+			evictions++;
+		}
+
+		keys[victim] = key;
+		data[victim] = entry;
+	}
+
+	/**
+	 * @return Amount of lookups.
+	 */
+	public long getProbes()
+	{
+		return probes;
+	}
+
+	/**
+	 * @return Amount of lookups finding the state.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The share of lookups finding the state.
+	 */
+	public double getHitRate()
+	{
+		return probes == 0 ? 0 : (double)hits / probes;
+	}
+
+	/**
+	 * @return Amount of stored values.
+	 */
+	public long getStores()
+	{
+		return stores;
+	}
+
+	/**
+	 * @return Amount of stored values which have evicted another state.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Zeroes the lookup and store counters.
+	 */
+	public void resetStatistics()
+	{
+		probes = 0;
+		hits = 0;
+		stores = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Gets the first slot of the bucket of a key.
+	 *
+	 * @param key The 64-bit hash of the state.
+	 * @return The slot index.
+	 */
+	private int getBucket(long key)
+	{
+		// fold the high bits in so that keys differing only there spread as well
+		return ((int)(key ^ (key >>> 32)) & bucketMask) * BUCKET_SLOTS;
+	}
+}
@@ -0,0 +1,481 @@
+package sk.flexoft.android.puzzle.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * @author Vladimir Iszer
+ * Decodes images just as large as a screen needs. The first pass over the stream reads the
+ * EXIF orientation and the image bounds, so the sample size can be chosen for the image as it
+ * will be shown; the second pass decodes the subsampled pixels, which are turned upright
+ * afterwards. A camera photo of tens of megapixels thus never gets decoded in full.
+ * <p>
+ * Images so large that even the subsampled bitmap would be several times larger than the
+ * screen are not decoded at all; a region decoder is opened instead, which decodes every
+ * tile from its own part of the image when the image gets sliced.
+ */
+public class BitmapLoader {
+
+	/** The Constant TAG. */
+	private static final String TAG = "BitmapLoader";
+
+	/** Amount of bytes the first pass may read before the image bounds, enough for any EXIF block. */
+	private static final int MARK_LIMIT = 1 << 17;
+
+	/** The smallest sample size the image is sliced by a region decoder at rather than decoded in full. */
+	private static final int REGION_SAMPLE_SIZE = 4;
+
+	/** The JPEG marker of the EXIF block. */
+	private static final int JPEG_APP1 = 0xE1;
+
+	/** The JPEG start of scan marker, no metadata follows it. */
+	private static final int JPEG_SOS = 0xDA;
+
+	/** The EXIF tag of the orientation. */
+	private static final int EXIF_ORIENTATION = 0x0112;
+
+	/**
+	 * Opens the stream of an image.
+	 */
+	private interface StreamSource
+	{
+		/**
+		 * @return A new stream of the image.
+		 * @throws IOException Signals the image couldn't be opened.
+		 */
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private BitmapLoader()
+	{
+	}
+
+	/**
+	 * Loads an image referenced by a content or file URI.
+	 *
+	 * @param resolver The content resolver.
+	 * @param uri The image URI.
+	 * @param screenWidth The width of the screen the image has to fit.
+	 * @param screenHeight The height of the screen the image has to fit.
+	 * @return The tiles of the upright image or null if the image couldn't be decoded.
+	 */
+	public static TileSource loadUri(final ContentResolver resolver, final Uri uri, int screenWidth, int screenHeight)
+	{
+		return load(new StreamSource() {
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.util.BitmapLoader.StreamSource#open()
+			 */
+			@Override
+			public InputStream open() throws IOException {
+				InputStream stream = resolver.openInputStream(uri);
+				if (stream == null)
+				{
+					throw new IOException("The image " + uri + " can't be opened.");
+				}
+
+				return stream;
+			}
+		}, screenWidth, screenHeight);
+	}
+
+	/**
+	 * Loads an image resource without density scaling, the screen layout scales it anyway.
+	 *
+	 * @param resources The resources.
+	 * @param id The resource identifier.
+	 * @param screenWidth The width of the screen the image has to fit.
+	 * @param screenHeight The height of the screen the image has to fit.
+	 * @return The tiles of the upright image or null if the image couldn't be decoded.
+	 */
+	public static TileSource loadResource(final Resources resources, final int id, int screenWidth, int screenHeight)
+	{
+		return load(new StreamSource() {
+
+			/* (non-Javadoc)
+			 * @see sk.flexoft.android.puzzle.util.BitmapLoader.StreamSource#open()
+			 */
+			@Override
+			public InputStream open() throws IOException {
+				return resources.openRawResource(id);
+			}
+		}, screenWidth, screenHeight);
+	}
+
+	/**
+	 * Gets the largest power of two sample size keeping the image at least as large as it is
+	 * shown when fitted to the screen in either orientation.
+	 *
+	 * @param width The width of the upright image.
+	 * @param height The height of the upright image.
+	 * @param screenWidth The width of the screen.
+	 * @param screenHeight The height of the screen.
+	 * @return The sample size.
+	 */
+	public static int getSampleSize(int width, int height, int screenWidth, int screenHeight)
+	{
+		if (width <= 0 || height <= 0 || screenWidth <= 0 || screenHeight <= 0)
+		{
+			return 1;
+		}
+
+		float portrait = Math.min((float)screenWidth / width, (float)screenHeight / height);
+		float landscape = Math.min((float)screenHeight / width, (float)screenWidth / height);
+		float scale = Math.max(portrait, landscape);
+
+		int sampleSize = 1;
+		while (sampleSize * 2 * scale <= 1)
+		{
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+
+	/**
+	 * Loads an image in two passes.
+	 *
+	 * @param source The source of the image streams.
+	 * @param screenWidth The width of the screen the image has to fit.
+	 * @param screenHeight The height of the screen the image has to fit.
+	 * @return The tiles of the upright image or null if the image couldn't be decoded.
+	 */
+	private static TileSource load(StreamSource source, int screenWidth, int screenHeight)
+	{
+		try
+		{
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			int orientation;
+
+			// the first pass reads the metadata only
+			InputStream stream = new BufferedInputStream(source.open(), 8192);
+			try
+			{
+				stream.mark(MARK_LIMIT);
+				orientation = readExifOrientation(stream);
+				stream.reset();
+
+				options.inJustDecodeBounds = true;
+				BitmapFactory.decodeStream(stream, null, options);
+			}
+			finally
+			{
+				stream.close();
+			}
+
+			if (options.outWidth <= 0 || options.outHeight <= 0)
+			{
+				return null;
+			}
+
+			// orientations 5 to 8 swap the sides of the image
+			boolean transposed = orientation >= 5;
+			int width = transposed ? options.outHeight : options.outWidth;
+			int height = transposed ? options.outWidth : options.outHeight;
+
+			options.inJustDecodeBounds = false;
+			options.inSampleSize = getSampleSize(width, height, screenWidth, screenHeight);
+			if (options.inSampleSize >= REGION_SAMPLE_SIZE)
+			{
+				TileSource regions = openRegions(source, orientation);
+				if (regions != null)
+				{
+					AndroidExtensions.Log(AndroidExtensions.LogType.Debug, TAG, "Opened [%d, %d] for region decoding with orientation %d.",
+							width, height, orientation);
+					return regions;
+				}
+			}
+
+			Bitmap bitmap;
+			stream = source.open();
+			try
+			{
+				bitmap = BitmapFactory.decodeStream(stream, null, options);
+			}
+			finally
+			{
+				stream.close();
+			}
+
+			AndroidExtensions.Log(AndroidExtensions.LogType.Debug, TAG, "Decoded [%d, %d] with sample size %d and orientation %d.",
+					width, height, options.inSampleSize, orientation);
+
+			return bitmap == null ? null : new BitmapTileSource(orient(bitmap, orientation));
+		}
+		catch (IOException e)
+		{
+			Log.w(TAG, "The image can't be read.", e);
+			return null;
+		}
+		catch (OutOfMemoryError e)
+		{
+			Log.w(TAG, "The image is too large.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Opens a region decoder of an image.
+	 *
+	 * @param source The source of the image streams.
+	 * @param orientation The EXIF orientation of the image.
+	 * @return The tiles of the upright image or null if the image format doesn't support region decoding.
+	 * @throws IOException Signals the image couldn't be opened.
+	 */
+	private static TileSource openRegions(StreamSource source, int orientation) throws IOException
+	{
+		InputStream stream = source.open();
+		try
+		{
+			BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(stream, false);
+			return decoder == null ? null : new RegionTileSource(decoder, orientation);
+		}
+		catch (IOException e)
+		{
+			// the decoder supports JPEG and PNG images only
+			Log.d(TAG, "The image can't be decoded by regions.", e);
+			return null;
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Turns a bitmap upright.
+	 *
+	 * @param bitmap The decoded bitmap.
+	 * @param orientation The EXIF orientation.
+	 * @return The upright bitmap, the decoded one if it is upright already.
+	 */
+	static Bitmap orient(Bitmap bitmap, int orientation)
+	{
+		Matrix matrix = new Matrix();
+		switch (orientation)
+		{
+		case 2:
+			matrix.setScale(-1, 1);
+			break;
+		case 3:
+			matrix.setRotate(180);
+			break;
+		case 4:
+			matrix.setScale(1, -1);
+			break;
+		case 5:
+			matrix.setRotate(90);
+			matrix.postScale(-1, 1);
+			break;
+		case 6:
+			matrix.setRotate(90);
+			break;
+		case 7:
+			matrix.setRotate(-90);
+			matrix.postScale(-1, 1);
+			break;
+		case 8:
+			matrix.setRotate(-90);
+			break;
+		default:
+			return bitmap;
+		}
+
+		Bitmap upright = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+		if (upright != bitmap)
+		{
+			bitmap.recycle();
+		}
+
+		return upright;
+	}
+
+	/**
+	 * Reads the orientation from the EXIF block of a JPEG stream.
+	 * The stream is read up to the EXIF block at most.
+	 *
+	 * @param stream The image stream.
+	 * @return The EXIF orientation 1 to 8, 1 if the image is not a JPEG or has no orientation.
+	 * @throws IOException Signals the stream couldn't be read.
+	 */
+	static int readExifOrientation(InputStream stream) throws IOException
+	{
+		if (stream.read() != 0xFF || stream.read() != 0xD8)
+		{
+			return 1;
+		}
+
+		int consumed = 2;
+		while (consumed < MARK_LIMIT)
+		{
+			int marker = stream.read();
+			while (marker == 0xFF)
+			{
+				// fill bytes may precede a marker
+				marker = stream.read();
+				consumed++;
+			}
+
+			int length = (stream.read() << 8) | stream.read();
+			consumed += 3;
+			if (marker < 0 || length < 2 || marker == JPEG_SOS)
+			{
+				return 1;
+			}
+
+			if (marker == JPEG_APP1)
+			{
+				if (length - 2 > MARK_LIMIT - consumed)
+				{
+					return 1;
+				}
+
+				byte[] block = new byte[length - 2];
+				int read = 0;
+				while (read < block.length)
+				{
+					int count = stream.read(block, read, block.length - read);
+					if (count < 0)
+					{
+						return 1;
+					}
+
+					read += count;
+				}
+
+				int orientation = parseExifOrientation(block);
+				if (orientation != 0)
+				{
+					return orientation;
+				}
+			}
+			else if (consumed + length - 2 > MARK_LIMIT || !skip(stream, length - 2))
+			{
+				return 1;
+			}
+
+			consumed += length - 2;
+			if (stream.read() != 0xFF)
+			{
+				return 1;
+			}
+
+			consumed++;
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Skips bytes of a stream.
+	 *
+	 * @param stream The stream.
+	 * @param count Amount of bytes to be skipped.
+	 * @return true if the bytes have been skipped; false at the end of the stream
+	 * @throws IOException Signals the stream couldn't be read.
+	 */
+	private static boolean skip(InputStream stream, long count) throws IOException
+	{
+		while (count > 0)
+		{
+			long skipped = stream.skip(count);
+			if (skipped <= 0)
+			{
+				if (stream.read() < 0)
+				{
+					return false;
+				}
+
+				skipped = 1;
+			}
+
+			count -= skipped;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the orientation in the first image directory of an APP1 block.
+	 *
+	 * @param block The APP1 block without its marker and length.
+	 * @return The orientation 1 to 8 or 0 if the block holds none.
+	 */
+	private static int parseExifOrientation(byte[] block)
+	{
+		// "Exif\0\0" followed by the TIFF header
+		if (block.length < 14 || block[0] != 'E' || block[1] != 'x' || block[2] != 'i' || block[3] != 'f')
+		{
+			return 0;
+		}
+
+		int tiff = 6;
+		boolean littleEndian = block[tiff] == 'I';
+		int directory = tiff + readInt(block, tiff + 4, littleEndian);
+		if (directory < tiff || directory + 2 > block.length)
+		{
+			return 0;
+		}
+
+		int entries = readShort(block, directory, littleEndian);
+		for (int i = 0; i < entries; i++)
+		{
+			int entry = directory + 2 + i * 12;
+			if (entry + 12 > block.length)
+			{
+				return 0;
+			}
+
+			if (readShort(block, entry, littleEndian) == EXIF_ORIENTATION)
+			{
+				int orientation = readShort(block, entry + 8, littleEndian);
+				return orientation >= 1 && orientation <= 8 ? orientation : 0;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Reads an unsigned 16-bit number.
+	 *
+	 * @param block The buffer.
+	 * @param offset The offset of the number.
+	 * @param littleEndian true for the Intel byte order; false for the Motorola one
+	 * @return The number.
+	 */
+	private static int readShort(byte[] block, int offset, boolean littleEndian)
+	{
+		int first = block[offset] & 0xFF;
+		int second = block[offset + 1] & 0xFF;
+		return littleEndian ? (second << 8) | first : (first << 8) | second;
+	}
+
+	/**
+	 * Reads a 32-bit number.
+	 *
+	 * @param block The buffer.
+	 * @param offset The offset of the number.
+	 * @param littleEndian true for the Intel byte order; false for the Motorola one
+	 * @return The number.
+	 */
+	private static int readInt(byte[] block, int offset, boolean littleEndian)
+	{
+		int high = readShort(block, offset, littleEndian);
+		int low = readShort(block, offset + 2, littleEndian);
+		return littleEndian ? (low << 16) | high : (high << 16) | low;
+	}
+}
@@ -0,0 +1,70 @@
+package sk.flexoft.android.puzzle.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * @author Vladimir Iszer
+ * Cuts tiles from a decoded bitmap.
+ */
+public class BitmapTileSource implements TileSource {
+
+	/** The bitmap. */
+	private final Bitmap bitmap;
+
+	/**
+	 * Instantiates a new tile source.
+	 *
+	 * @param bitmap The upright bitmap.
+	 */
+	public BitmapTileSource(Bitmap bitmap)
+	{
+		if (bitmap == null)
+		{
+			throw new IllegalArgumentException("bitmap");
+		}
+
+		this.bitmap = bitmap;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#getWidth()
+	 */
+	@Override
+	public int getWidth() {
+		return bitmap.getWidth();
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return bitmap.getHeight();
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#decodeTile(android.graphics.Rect, int, int)
+	 */
+	@Override
+	public Bitmap decodeTile(Rect sourceRect, int width, int height) {
+		return AndroidExtensions.copyBitmapPart(bitmap, sourceRect, new Rect(0, 0, width, height));
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#drawTile(android.graphics.Rect, android.graphics.Canvas, android.graphics.Rect)
+	 */
+	@Override
+	public void drawTile(Rect sourceRect, Canvas canvas, Rect targetRect) {
+		canvas.drawBitmap(bitmap, sourceRect, targetRect, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#recycle()
+	 */
+	@Override
+	public void recycle() {
+		bitmap.recycle();
+	}
+}
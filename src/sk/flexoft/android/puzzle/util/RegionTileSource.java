@@ -0,0 +1,152 @@
+package sk.flexoft.android.puzzle.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * @author Vladimir Iszer
+ * Decodes tiles straight from the encoded image by a region decoder. Each tile is decoded
+ * from its own part of the image, subsampled as close to its final size as possible, so the
+ * full image is never held in memory; just the encoded data kept by the decoder and a single
+ * tile at a time.
+ */
+public class RegionTileSource implements TileSource {
+
+	/** The region decoder. */
+	private final BitmapRegionDecoder decoder;
+
+	/** The EXIF orientation of the encoded image. */
+	private final int orientation;
+
+	/**
+	 * Instantiates a new tile source.
+	 *
+	 * @param decoder The region decoder of the image.
+	 * @param orientation The EXIF orientation of the image.
+	 */
+	public RegionTileSource(BitmapRegionDecoder decoder, int orientation)
+	{
+		if (decoder == null)
+		{
+			throw new IllegalArgumentException("decoder");
+		}
+
+		this.decoder = decoder;
+		this.orientation = orientation;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#getWidth()
+	 */
+	@Override
+	public int getWidth() {
+		return isTransposed() ? decoder.getHeight() : decoder.getWidth();
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return isTransposed() ? decoder.getWidth() : decoder.getHeight();
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#decodeTile(android.graphics.Rect, int, int)
+	 */
+	@Override
+	public Bitmap decodeTile(Rect sourceRect, int width, int height) {
+		if (width <= 0 || height <= 0)
+		{
+			throw new IllegalArgumentException("width");
+		}
+
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = 1;
+		while (sourceRect.width() / (options.inSampleSize * 2) >= width
+				&& sourceRect.height() / (options.inSampleSize * 2) >= height)
+		{
+			options.inSampleSize *= 2;
+		}
+
+		Bitmap tile = decoder.decodeRegion(toEncoded(sourceRect), options);
+		if (tile == null)
+		{
+			throw new IllegalStateException("The tile can't be decoded.");
+		}
+
+		tile = BitmapLoader.orient(tile, orientation);
+		if (tile.getWidth() == width && tile.getHeight() == height)
+		{
+			return tile;
+		}
+
+		Bitmap scaled = Bitmap.createScaledBitmap(tile, width, height, true);
+		if (scaled != tile)
+		{
+			tile.recycle();
+		}
+
+		return scaled;
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#drawTile(android.graphics.Rect, android.graphics.Canvas, android.graphics.Rect)
+	 */
+	@Override
+	public void drawTile(Rect sourceRect, Canvas canvas, Rect targetRect) {
+		Bitmap tile = decodeTile(sourceRect, targetRect.width(), targetRect.height());
+		canvas.drawBitmap(tile, targetRect.left, targetRect.top, null);
+		tile.recycle();
+	}
+
+	/* (non-Javadoc)
+	 * @see sk.flexoft.android.puzzle.util.TileSource#recycle()
+	 */
+	@Override
+	public void recycle() {
+		decoder.recycle();
+	}
+
+	/**
+	 * @return true if the upright image has the sides of the encoded one swapped; otherwise false
+	 */
+	private boolean isTransposed()
+	{
+		return orientation >= 5;
+	}
+
+	/**
+	 * Maps a rectangle of the upright image to the encoded one.
+	 *
+	 * @param rect The rectangle of the upright image.
+	 * @return The rectangle of the encoded image.
+	 */
+	private Rect toEncoded(Rect rect)
+	{
+		int width = decoder.getWidth();
+		int height = decoder.getHeight();
+		switch (orientation)
+		{
+		case 2:
+			return new Rect(width - rect.right, rect.top, width - rect.left, rect.bottom);
+		case 3:
+			return new Rect(width - rect.right, height - rect.bottom, width - rect.left, height - rect.top);
+		case 4:
+			return new Rect(rect.left, height - rect.bottom, rect.right, height - rect.top);
+		case 5:
+			return new Rect(rect.top, rect.left, rect.bottom, rect.right);
+		case 6:
+			return new Rect(rect.top, height - rect.right, rect.bottom, height - rect.left);
+		case 7:
+			return new Rect(width - rect.bottom, height - rect.right, width - rect.top, height - rect.left);
+		case 8:
+			return new Rect(width - rect.bottom, rect.left, width - rect.top, rect.right);
+		default:
+			return new Rect(rect);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package sk.flexoft.android.puzzle.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * @author Vladimir Iszer
+ * Provides scaled parts of an upright image, either from a decoded bitmap or straight from
+ * the encoded image.
+ */
+public interface TileSource {
+
+	/**
+	 * @return The width of the upright image.
+	 */
+	int getWidth();
+
+	/**
+	 * @return The height of the upright image.
+	 */
+	int getHeight();
+
+	/**
+	 * Creates a bitmap of a part of the image.
+	 *
+	 * @param sourceRect The part of the upright image.
+	 * @param width The width of the created bitmap.
+	 * @param height The height of the created bitmap.
+	 * @return The bitmap of the part scaled to the given size.
+	 */
+	Bitmap decodeTile(Rect sourceRect, int width, int height);
+
+	/**
+	 * Draws a part of the image scaled to a target rectangle.
+	 *
+	 * @param sourceRect The part of the upright image.
+	 * @param canvas The canvas.
+	 * @param targetRect The target rectangle on the canvas.
+	 */
+	void drawTile(Rect sourceRect, Canvas canvas, Rect targetRect);
+
+	/**
+	 * Releases the image. No tiles can be created afterwards.
+	 */
+	void recycle();
+}
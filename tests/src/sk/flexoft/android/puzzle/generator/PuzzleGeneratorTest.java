@@ -0,0 +1,63 @@
+package sk.flexoft.android.puzzle.generator;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import sk.flexoft.android.puzzle.core.Difficulty;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+import sk.flexoft.android.puzzle.solver.IdaStarSolver;
+import sk.flexoft.android.puzzle.solver.LinearConflictHeuristic;
+import sk.flexoft.android.puzzle.solver.SolverResult;
+
+/**
+ * @author Vladimir Iszer
+ * Checks the generated boards cover the whole solution length range of a difficulty.
+ */
+public class PuzzleGeneratorTest extends TestCase {
+
+	/** Amount of boards generated per difficulty. */
+	private static final int BOARDS = 200;
+
+	/**
+	 * Checks the easy boards meet the range and have solutions of both parities.
+	 */
+	public void testEasyRangeHasBothParities()
+	{
+		checkRange(Difficulty.Easy);
+	}
+
+	/**
+	 * Checks the medium boards meet the range and have solutions of both parities.
+	 */
+	public void testMediumRangeHasBothParities()
+	{
+		checkRange(Difficulty.Medium);
+	}
+
+	/**
+	 * Generates 3x3 boards of a difficulty and checks their exact solution lengths.
+	 *
+	 * @param difficulty The difficulty.
+	 */
+	private static void checkRange(Difficulty difficulty)
+	{
+		PuzzleGenerator generator = new PuzzleGenerator(new Random(1));
+		IdaStarSolver solver = new IdaStarSolver(new LinearConflictHeuristic());
+		PuzzleBoard board = new PuzzleBoard(3);
+		boolean[] parities = new boolean[2];
+		for (int i = 0; i < BOARDS; i++)
+		{
+			assertTrue(generator.generate(board, difficulty));
+
+			SolverResult result = solver.solve(board);
+			assertTrue(result.isSolved());
+
+			int length = result.getMoves().length;
+			assertTrue(length >= difficulty.getMinSolutionLength() && length <= difficulty.getMaxSolutionLength());
+			parities[length % 2] = true;
+		}
+
+		assertTrue(parities[0] && parities[1]);
+	}
+}
@@ -0,0 +1,97 @@
+package sk.flexoft.android.puzzle.recording;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import sk.flexoft.android.puzzle.GameStateStore;
+import sk.flexoft.android.puzzle.core.PuzzleBoard;
+
+/**
+ * @author Vladimir Iszer
+ * Checks games are recorded across sessions and replayed by {@link GameRecordReader}.
+ */
+public class GameRecorderTest extends TestCase {
+
+	/**
+	 * Checks the moves of a game restored from a snapshot by a new session are recorded.
+	 *
+	 * @throws Exception Signals the recording couldn't be read.
+	 */
+	public void testRestoredGameIsRecorded() throws Exception
+	{
+		ByteArrayOutputStream recording = new ByteArrayOutputStream();
+
+		// the first session starts the game, makes a few moves and saves it
+		GameRecorder recorder = new GameRecorder(recording, true);
+		PuzzleBoard board = new PuzzleBoard(4);
+		board.addListener(recorder);
+		board.shuffle(40, new Random(1));
+		makeMoves(board, 3);
+		byte[] snapshot = GameStateStore.capture(0, null, board);
+		recorder.close();
+
+		// the next session restores the game and goes on playing it
+		recorder = new GameRecorder(recording, false);
+		PuzzleBoard restored = new PuzzleBoard(4);
+		GameStateStore.parse(snapshot).restoreBoard(restored);
+		restored.addListener(recorder);
+		int[] start = getPuzzles(restored);
+		recorder.resume(restored);
+		makeMoves(restored, 5);
+		recorder.close();
+		assertNull(recorder.getError());
+
+		GameRecordReader reader = new GameRecordReader(new ByteArrayInputStream(recording.toByteArray()));
+		assertTrue(reader.nextGame());
+		assertTrue(reader.nextGame());
+		assertTrue(Arrays.equals(start, getPuzzles(reader.getBoard())));
+		while (reader.nextMove() != GameRecordReader.END_OF_GAME)
+		{
+			// replay the moves of the restored game
+		}
+
+		assertEquals(5, reader.getMoveCount());
+		assertTrue(Arrays.equals(getPuzzles(restored), getPuzzles(reader.getBoard())));
+		assertFalse(reader.nextGame());
+	}
+
+	/**
+	 * Moves the empty field never reverting the previous move.
+	 *
+	 * @param board The board.
+	 * @param count Amount of moves.
+	 */
+	private static void makeMoves(PuzzleBoard board, int count)
+	{
+		int previous = -1;
+		for (int move = 0; move < count; move++)
+		{
+			int empty = board.getEmptyCell();
+			for (int index = 0; index < board.getSize() * board.getSize(); index++)
+			{
+				if (index != previous && board.isFieldExchangeable(index))
+				{
+					board.exchange(index);
+					break;
+				}
+			}
+
+			previous = empty;
+		}
+	}
+
+	/**
+	 * @param board The board.
+	 * @return The arrangement of the board.
+	 */
+	private static int[] getPuzzles(PuzzleBoard board)
+	{
+		int[] puzzles = new int[board.getSize() * board.getSize()];
+		board.getPuzzles(puzzles);
+		return puzzles;
+	}
+}